@@ -0,0 +1,234 @@
+package edu.carleton.comp4107.project;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.jgap.RandomGenerator;
+
+/**
+ * Randomised checks of the row crossovers. For random pairs of parents on
+ * every puzzle in data/, each crossover must
+ * 	produce child rows that are permutations of the row's missing values
+ * 	produce exactly the children of the original quadratic implementation,
+ * 		kept here for reference, given the same random numbers
+ * 	leave its working space all zero
+ *
+ * Usage: check.sh [trials]
+ */
+public class CrossoverCheck {
+	private static final String[] NAMES = {"order-one", "pmx", "cycle"};
+
+	public static void main(String[] args) throws Exception {
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int failures = 0;
+		for (File file : puzzleFiles(new File("data"))) {
+			PuzzleLayout layout = new PuzzleLayout(SudokuUtils.loadPuzzle(file.getPath()));
+			for (int type = 0; type < NAMES.length; ++type) {
+				if (!check(layout, type, trials)) {
+					System.out.println("FAILED: " + NAMES[type] + " on " + file);
+					++failures;
+				}
+			}
+		}
+		System.out.println(failures == 0 ? "All crossover checks passed"
+				: failures + " crossover checks failed");
+		if (failures > 0) System.exit(1);
+	}
+
+	private static boolean check(PuzzleLayout layout, int type, int trials) {
+		Random rand = new Random(type);
+		int n = layout.getNumBlanks();
+		int[] mark1 = new int[layout.getSize() + 1];
+		int[] mark2 = new int[layout.getSize() + 1];
+		for (int t = 0; t < trials; ++t) {
+			int[] par1 = randomCells(layout, rand);
+			int[] par2 = randomCells(layout, rand);
+			int[] child1 = new int[n], child2 = new int[n];
+			int[] expected1 = new int[n], expected2 = new int[n];
+			for (int row = 0; row < layout.getSize(); ++row) {
+				int offset = layout.getRowOffset(row);
+				int numGenes = layout.getRowLength(row);
+				if (numGenes < 2) continue;
+				long seed = rand.nextLong();
+				switch (type) {
+				case PermutationCrossover.ORDER_ONE:
+					PermutationCrossover.doOrderOneCrossover(par1, par2, child1, child2,
+							offset, numGenes, generator(seed), mark1, mark2);
+					referenceOrderOne(par1, par2, expected1, expected2, offset,
+							numGenes, generator(seed));
+					break;
+				case PermutationCrossover.PMX:
+					PermutationCrossover.doPartiallyMappedCrossover(par1, par2, child1,
+							child2, offset, numGenes, generator(seed), mark1, mark2);
+					referencePmx(par1, par2, expected1, expected2, offset, numGenes,
+							generator(seed));
+					break;
+				default:
+					PermutationCrossover.doCycleCrossover(par1, par2, child1, child2,
+							offset, numGenes, generator(seed), mark1, mark2);
+					referenceCycle(par1, par2, expected1, expected2, offset, numGenes);
+				}
+				if (!isPermutation(par1, child1, offset, numGenes)
+						|| !isPermutation(par1, child2, offset, numGenes)) {
+					return false;
+				}
+			}
+			if (!Arrays.equals(child1, expected1) || !Arrays.equals(child2, expected2)
+					|| !isZero(mark1) || !isZero(mark2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static RandomGenerator generator(long seed) {
+		return new SplittableRandomGenerator(new SplittableRandom(seed));
+	}
+
+	private static int[] randomCells(PuzzleLayout layout, Random rand) {
+		int[] cells = layout.getMissingValues();
+		for (int row = 0; row < layout.getSize(); ++row) {
+			int offset = layout.getRowOffset(row);
+			for (int i = layout.getRowLength(row) - 1; i > 0; --i) {
+				int j = offset + rand.nextInt(i + 1);
+				int tmp = cells[offset + i];
+				cells[offset + i] = cells[j];
+				cells[j] = tmp;
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @return whether row [offset, offset+numGenes) of child holds the same
+	 * 	values as that of parent
+	 */
+	private static boolean isPermutation(int[] parent, int[] child, int offset,
+			int numGenes) {
+		int[] a = Arrays.copyOfRange(parent, offset, offset + numGenes);
+		int[] b = Arrays.copyOfRange(child, offset, offset + numGenes);
+		Arrays.sort(a);
+		Arrays.sort(b);
+		return Arrays.equals(a, b);
+	}
+
+	private static boolean isZero(int[] values) {
+		for (int value : values) {
+			if (value != 0) return false;
+		}
+		return true;
+	}
+
+	private static File[] puzzleFiles(File dir) {
+		return new File[] {
+			new File(dir, "four" + File.separator + "easy.txt"),
+			new File(dir, "four" + File.separator + "medium.txt"),
+			new File(dir, "nine" + File.separator + "blank9x9.txt"),
+			new File(dir, "nine" + File.separator + "extreme1.txt"),
+			new File(dir, "nine" + File.separator + "medium1.txt"),
+			new File(dir, "sixteen" + File.separator + "hex.txt")
+		};
+	}
+
+	/* The original implementations, searching the segments linearly */
+
+	private static void referenceOrderOne(int[] par1, int[] par2, int[] child1,
+			int[] child2, int offset, int numGenes, RandomGenerator rand) {
+		int start = rand.nextInt(numGenes-1);
+		int end = start + rand.nextInt(numGenes - start) + 1;
+		for (int i = start; i < end; ++i) {
+			child1[offset+i] = par2[offset+i];
+			child2[offset+i] = par1[offset+i];
+		}
+		int j = end, k = end;
+		for (int i = 0; i < numGenes; ++i) {
+			int index = offset + (i+end)%numGenes;
+			if (!contains(par2, offset+start, offset+end, par1[index])) {
+				child1[offset + j%numGenes] = par1[index];
+				++j;
+			}
+			if (!contains(par1, offset+start, offset+end, par2[index])) {
+				child2[offset + k%numGenes] = par2[index];
+				++k;
+			}
+		}
+	}
+
+	private static void referencePmx(int[] par1, int[] par2, int[] child1,
+			int[] child2, int offset, int numGenes, RandomGenerator rand) {
+		int[] need1 = new int[numGenes];
+		int[] need2 = new int[numGenes];
+		int numNeed1 = 0, numNeed2 = 0;
+		int start = rand.nextInt(numGenes-1);
+		int end = start + rand.nextInt(numGenes - start) + 1;
+		for (int i = start; i < end; ++i) {
+			child1[offset+i] = par1[offset+i];
+			child2[offset+i] = par2[offset+i];
+		}
+		for (int i = start; i < end; ++i) {
+			if (!contains(par1, offset+start, offset+end, par2[offset+i])) {
+				need1[numNeed1++] = par2[offset+i];
+			}
+			if (!contains(par2, offset+start, offset+end, par1[offset+i])) {
+				need2[numNeed2++] = par1[offset+i];
+			}
+		}
+		int next1 = 0, next2 = 0;
+		for (int j = 0; j < numGenes - (end - start); ++j) {
+			int i = offset + (j+end)%numGenes;
+			if (contains(par1, offset+start, offset+end, par2[i])) {
+				child1[i] = need1[next1++];
+			} else {
+				child1[i] = par2[i];
+			}
+			if (contains(par2, offset+start, offset+end, par1[i])) {
+				child2[i] = need2[next2++];
+			} else {
+				child2[i] = par1[i];
+			}
+		}
+	}
+
+	private static void referenceCycle(int[] par1, int[] par2, int[] child1,
+			int[] child2, int offset, int numGenes) {
+		boolean[] done = new boolean[numGenes];
+		int start = 0;
+		int count = 0;
+		boolean flip = false;
+		while (true) {
+			int i = start;
+			while (!done[i]) {
+				done[i] = true;
+				if (flip) {
+					child2[offset+i] = par1[offset+i];
+					child1[offset+i] = par2[offset+i];
+				} else {
+					child1[offset+i] = par1[offset+i];
+					child2[offset+i] = par2[offset+i];
+				}
+				++count;
+				i = indexOf(par1, offset, offset+numGenes, par2[offset+i]) - offset;
+			}
+			if (count >= numGenes) {
+				break;
+			}
+			while (done[start]) {
+				++start;
+			}
+			flip = !flip;
+		}
+	}
+
+	private static boolean contains(int[] cells, int from, int to, int value) {
+		return indexOf(cells, from, to, value) >= 0;
+	}
+
+	private static int indexOf(int[] cells, int from, int to, int value) {
+		for (int i = from; i < to; ++i) {
+			if (cells[i] == value) return i;
+		}
+		return -1;
+	}
+}
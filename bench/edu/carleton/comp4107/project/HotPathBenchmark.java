@@ -0,0 +1,210 @@
+package edu.carleton.comp4107.project;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import org.jgap.Configuration;
+import org.jgap.Population;
+import org.jgap.RandomGenerator;
+
+/**
+ * Micro-benchmarks for the hot paths of the GA: fitness evaluation,
+ * formatting a solution, the three row crossovers and swap mutation, each
+ * run against a puzzle of each size from 4x4 to 36x36.
+ *
+ * Each benchmark is run for a number of timed warm-up iterations, so that
+ * the JIT has compiled it, and then for a number of measured iterations.
+ * The throughput of the measured iterations is reported as a mean with its
+ * standard deviation, along with the bytes allocated per operation and the
+ * allocation rate, taken from the JVM's per-thread allocation counter.
+ *
+ * Usage: bench.sh [options] [regex]
+ * 	regex: only run benchmarks whose name matches
+ * 	--warmup <value>: the number of warm-up iterations (default 5)
+ * 	--iterations <value>: the number of measured iterations (default 5)
+ * 	--time <value>: the length of each iteration in milliseconds
+ * 		(default 1000)
+ */
+public class HotPathBenchmark {
+	private static final String[] PUZZLES = {
+		"data/four/medium.txt", "data/nine/extreme1.txt", "data/sixteen/hex.txt",
+		"data/twentyfive/easy.txt", "data/thirtysix/easy.txt"
+	};
+	/* The number of operations run between checks of the clock */
+	private static final int BATCH = 16;
+	private static int WARMUP = 5;
+	private static int ITERATIONS = 5;
+	private static long ITERATION_TIME = 1000;
+	/* Results are folded into this so the JIT can't discard the work */
+	private static volatile long sink;
+
+	/**
+	 * One operation to be measured
+	 */
+	private interface Op {
+		/**
+		 * @return any value depending on the work done
+		 */
+		long run();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Pattern filter = null;
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--warmup")) {
+				WARMUP = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--iterations")) {
+				ITERATIONS = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--time")) {
+				ITERATION_TIME = Long.parseLong(args[++i]);
+			} else {
+				filter = Pattern.compile(args[i]);
+			}
+		}
+
+		System.out.println(String.format("%-12s %-7s %16s %10s %12s %12s",
+				"Benchmark", "Puzzle", "ops/s", "error", "B/op", "MB/s alloc"));
+		for (String name : new String[] {"evaluate", "formatPuzzle", "orderOne",
+				"pmx", "cycle", "swapMutation"}) {
+			if (filter != null && !filter.matcher(name).find()) continue;
+			for (String filename : PUZZLES) {
+				int[][] puzzle = SudokuUtils.loadPuzzle(filename.replace('/',
+						File.separatorChar));
+				measure(name, puzzle.length + "x" + puzzle.length,
+						createOp(name, puzzle));
+			}
+		}
+	}
+
+	/**
+	 * Create the operation for a benchmark, with its own population
+	 * @param name the benchmark name
+	 * @param puzzle the puzzle to run it on
+	 * @return the operation
+	 */
+	private static Op createOp(String name, int[][] puzzle) throws Exception {
+		final PuzzleLayout layout = new PuzzleLayout(puzzle);
+		final Configuration conf = SudokuSolver.createConfiguration(
+				"bench-" + name + "-" + puzzle.length, puzzle, layout, null);
+		final Population pop = SudokuSolver.generatePopulation(conf, layout);
+		final SudokuChromosome chrom1 = (SudokuChromosome) pop.getChromosome(0);
+		final SudokuChromosome chrom2 = (SudokuChromosome) pop.getChromosome(1);
+		final int[] par1 = chrom1.toCells();
+		final int[] par2 = chrom2.toCells();
+		final int[] child1 = new int[par1.length];
+		final int[] child2 = new int[par2.length];
+		final int[] scratch1 = new int[puzzle.length + 1];
+		final int[] scratch2 = new int[puzzle.length + 1];
+		final RandomGenerator rand = new SplittableRandomGenerator(new SplittableRandom(42));
+
+		if (name.equals("evaluate")) {
+			final SudokuFitnessFunction fitness = new SudokuFitnessFunction();
+			return new Op() {
+				public long run() {
+					return (long) fitness.evaluate(chrom1);
+				}
+			};
+		} else if (name.equals("formatPuzzle")) {
+			final int[][] original = layout.getPuzzle();
+			return new Op() {
+				public long run() {
+					return SudokuUtils.formatPuzzle(chrom1, original)[0][0];
+				}
+			};
+		} else if (name.equals("swapMutation")) {
+			final SwapMutation mutation = new SwapMutation(SwapMutation.MUTATION_RATE);
+			final List<Object> candidates = new ArrayList<Object>();
+			return new Op() {
+				public long run() {
+					mutation.operate(pop, candidates);
+					return candidates.size();
+				}
+			};
+		}
+		final int type = name.equals("orderOne") ? PermutationCrossover.ORDER_ONE
+				: name.equals("pmx") ? PermutationCrossover.PMX
+				: PermutationCrossover.CYCLE;
+		/* One operation crosses over every row of a pair of parents, as
+		 * PermutationCrossover.operate does */
+		return new Op() {
+			public long run() {
+				for (int row = 0; row < layout.getSize(); ++row) {
+					int offset = layout.getRowOffset(row);
+					int numGenes = layout.getRowLength(row);
+					if (numGenes < 2) continue;
+					switch (type) {
+					case PermutationCrossover.ORDER_ONE:
+						PermutationCrossover.doOrderOneCrossover(par1, par2, child1,
+								child2, offset, numGenes, rand, scratch1, scratch2);
+						break;
+					case PermutationCrossover.PMX:
+						PermutationCrossover.doPartiallyMappedCrossover(par1, par2,
+								child1, child2, offset, numGenes, rand, scratch1, scratch2);
+						break;
+					default:
+						PermutationCrossover.doCycleCrossover(par1, par2, child1,
+								child2, offset, numGenes, rand, scratch1, scratch2);
+					}
+				}
+				return child1[0] + child2[child2.length - 1];
+			}
+		};
+	}
+
+	/**
+	 * Warm up and measure one benchmark, printing a line of results
+	 */
+	private static void measure(String name, String puzzle, Op op) {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP; ++i) {
+			iterate(op);
+		}
+		double[] rates = new double[ITERATIONS];
+		long totalOps = 0;
+		long totalTime = 0;
+		long startBytes = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < ITERATIONS; ++i) {
+			long startTime = System.nanoTime();
+			long ops = iterate(op);
+			long time = System.nanoTime() - startTime;
+			rates[i] = ops / (time / 1e9);
+			totalOps += ops;
+			totalTime += time;
+		}
+		long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+		double mean = 0;
+		for (double rate : rates) mean += rate;
+		mean /= rates.length;
+		double variance = 0;
+		for (double rate : rates) variance += (rate - mean) * (rate - mean);
+		double stdDev = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) : 0;
+		System.out.println(String.format("%-12s %-7s %16.1f %9.1f%% %12.1f %12.1f",
+				name, puzzle, mean, 100 * stdDev / mean, (double) bytes / totalOps,
+				bytes / (totalTime / 1e9) / (1024 * 1024)));
+	}
+
+	/**
+	 * Run an operation repeatedly for one iteration's worth of time
+	 * @return the number of operations run
+	 */
+	private static long iterate(Op op) {
+		long deadline = System.nanoTime() + ITERATION_TIME * 1000000;
+		long ops = 0;
+		long result = 0;
+		do {
+			for (int i = 0; i < BATCH; ++i) {
+				result += op.run();
+			}
+			ops += BATCH;
+		} while (System.nanoTime() < deadline);
+		sink += result;
+		return ops;
+	}
+}
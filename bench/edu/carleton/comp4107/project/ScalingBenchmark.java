@@ -0,0 +1,123 @@
+package edu.carleton.comp4107.project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how the GA scales with the size of the grid: a number of
+ * attempts are made at one puzzle of each size from 4x4 to 36x36, and for
+ * each size the number solved, the median time to solve, the mean number
+ * of evaluations to solve, the time per generation and the best fitness
+ * reached are reported. The GA, simulated annealing or the GA without JGAP
+ * can be measured, so that they can be compared; for annealing, a
+ * generation is a temperature level.
+ *
+ * Each puzzle first gets a number of warm-up attempts, whose results are
+ * discarded, so that the JIT has compiled the GA. Attempts are made one
+ * after another with the default settings of SudokuSolver, and their random
+ * choices are split from one seed, so that runs with the same seed make the
+ * same choices.
+ *
+ * Usage: scaling.sh [options]
+ * 	--warmup <value>: the number of warm-up attempts per puzzle (default 1)
+ * 	--tries <value>: the number of measured attempts per puzzle (default 5)
+ * 	--seed <value>: the seed for every random choice (default 1)
+ * 	--propagation: fill in forced cells before running the GA, which
+ * 		solves the smaller puzzles outright
+ * 	--engine ga|anneal|native: the engine to measure (default ga)
+ */
+public class ScalingBenchmark {
+	private static final String[] PUZZLES = {
+		"data/four/medium.txt", "data/nine/medium1.txt", "data/sixteen/hex.txt",
+		"data/twentyfive/easy.txt", "data/thirtysix/easy.txt"
+	};
+	/* SudokuSolver's default generation limits, applied to annealing's
+	 * temperature levels */
+	private static final int MAX_LEVELS = 10000;
+	private static final int STUCK_LEVELS = 200;
+	private static int WARMUP = 1;
+	private static int TRIES = 5;
+	private static long SEED = 1;
+	private static boolean PROPAGATE = false;
+	private static String ENGINE = "ga";
+
+	public static void main(String[] args) throws Exception {
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--warmup")) {
+				WARMUP = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--tries")) {
+				TRIES = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				SEED = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--propagation")) {
+				PROPAGATE = true;
+			} else if (args[i].equals("--engine")) {
+				ENGINE = args[++i];
+				if (!ENGINE.equals("ga") && !ENGINE.equals("anneal")
+						&& !ENGINE.equals("native")) {
+					System.out.println("Error: Invalid engine " + ENGINE);
+					System.exit(-1);
+				}
+			} else {
+				System.out.println("Error: Invalid argument supplied.");
+				System.exit(-1);
+			}
+		}
+
+		SudokuSolver.getReporter().setLevel(ProgressReporter.QUIET);
+		SplittableRandom random = new SplittableRandom(SEED);
+		/* Attempts are numbered across puzzles, since each configuration's
+		 * name must be unique */
+		int tryNum = 0;
+		System.out.println(String.format("%-7s %7s %7s %12s %12s %10s %10s %15s",
+				"Size", "Blanks", "Solved", "Median ms", "Evals/solve", "ms/gen", "Gens",
+				"Best fitness"));
+		for (String filename : PUZZLES) {
+			int[][] puzzle = SudokuUtils.loadPuzzle(filename.replace('/',
+					File.separatorChar));
+			if (PROPAGATE) puzzle = ConstraintPropagator.propagate(puzzle);
+			PuzzleLayout layout = new PuzzleLayout(puzzle);
+			int maxFitness = puzzle.length * puzzle.length * 2;
+
+			List<Long> solveTimes = new ArrayList<Long>();
+			long totalTime = 0;
+			long totalGens = 0;
+			long solveEvaluations = 0;
+			int bestFit = 0;
+			for (int t = -WARMUP; t < TRIES; ++t) {
+				SolverEngine engine = ENGINE.equals("anneal")
+						? new AnnealingEngine(MAX_LEVELS, STUCK_LEVELS)
+						: ENGINE.equals("native")
+						? SudokuSolver.createNativeEngine(PermutationCrossover.PMX,
+								SwapMutation.MUTATION_RATE)
+						: new GeneticEngine(null, PermutationCrossover.PMX,
+								SwapMutation.MUTATION_RATE);
+				TryResult result = engine.solve(tryNum++, layout, random.split(),
+						new AtomicBoolean());
+				if (t < 0) continue;
+				if (result.isSolved()) {
+					solveTimes.add(result.getTime());
+					solveEvaluations += result.getEvaluations();
+				}
+				totalTime += result.getTime();
+				totalGens += result.getGeneration() + 1;
+				bestFit = Math.max(bestFit, result.getBestFit());
+			}
+			Collections.sort(solveTimes);
+			String median = solveTimes.isEmpty() ? "-" : String.format(Locale.ROOT,
+					"%.0f", solveTimes.get(solveTimes.size() / 2) / 1e6);
+			String evaluations = solveTimes.isEmpty() ? "-"
+					: Long.toString(solveEvaluations / solveTimes.size());
+			System.out.println(String.format(Locale.ROOT, "%-7s %7d %7s %12s %12s %10.2f %10.1f %15s",
+					puzzle.length + "x" + puzzle.length, layout.getNumBlanks(),
+					solveTimes.size() + "/" + TRIES, median, evaluations,
+					totalTime / 1e6 / totalGens,
+					(double) totalGens / TRIES, bestFit + "/" + maxFitness));
+		}
+	}
+}
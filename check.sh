@@ -0,0 +1,2 @@
+mkdir -p bench-bin
+javac -sourcepath src -d bench-bin src/edu/carleton/comp4107/project/*.java bench/edu/carleton/comp4107/project/*.java -cp "lib/jgap.jar" && java -cp "bench-bin/:lib/jgap.jar" edu.carleton.comp4107.project.CrossoverCheck $@
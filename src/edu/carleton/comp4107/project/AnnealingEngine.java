@@ -0,0 +1,183 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves a puzzle by simulated annealing over the same encoding the GA
+ * uses: each row's blank cells hold a permutation of the values missing
+ * from that row, so rows are always valid, and a move swaps two blank
+ * cells of one row. Moves are scored with OccupancyCounters, which keep the
+ * same score as SudokuFitnessFunction up to date in constant time per swap.
+ *
+ * A move that doesn't lower the score is always made; one that lowers it
+ * by d is made with probability exp(-d / T). The temperature T starts at
+ * the standard deviation of the score over a random walk, and falls by
+ * COOLING after every level of movesPerLevel moves, where movesPerLevel is
+ * the sum of the squares of the rows' numbers of blank cells. If the best
+ * score hasn't improved for REHEAT levels the temperature is set back to
+ * where it started. The attempt ends once the puzzle is solved, or the best
+ * score hasn't improved for stuckThreshold levels, or after maxLevels
+ * levels. Levels are reported as generations, and each move scored counts
+ * as an evaluation.
+ */
+public class AnnealingEngine implements SolverEngine {
+	private static final double COOLING = 0.9;
+	private static final int REHEAT = 30;
+	/* The number of moves of the random walk setting the first temperature */
+	private static final int SAMPLE_MOVES = 200;
+	private final int maxLevels;
+	private final int stuckThreshold;
+
+	/**
+	 * @param maxLevels the most temperature levels to try
+	 * @param stuckThreshold the number of levels to keep trying without
+	 * 	improvement in the best score before giving up
+	 */
+	public AnnealingEngine(int maxLevels, int stuckThreshold) {
+		this.maxLevels = maxLevels;
+		this.stuckThreshold = stuckThreshold;
+	}
+
+	@Override
+	public TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop) {
+		long startTime = System.nanoTime();
+		int size = layout.getSize();
+		int maxFitness = size * size * 2;
+		int[][] rows = new int[size][];
+		int[] movable = new int[size];
+		int numMovable = 0;
+		int movesPerLevel = 0;
+		for (int i = 0; i < size; ++i) {
+			rows[i] = layout.getMissingValues(i);
+			shuffle(rows[i], random);
+			if (rows[i].length > 1) {
+				movable[numMovable++] = i;
+				movesPerLevel += rows[i].length * rows[i].length;
+			}
+		}
+		OccupancyCounters occupancy = new OccupancyCounters(layout, rows);
+		int[][] best = copy(rows);
+		int bestFit = occupancy.getScore();
+		long evaluations = 1;
+
+		double startTemperature = 0;
+		if (numMovable > 0) {
+			/* The standard deviation of the score over a random walk */
+			double sum = 0;
+			double sumSquares = 0;
+			for (int m = 0; m < SAMPLE_MOVES; ++m) {
+				int row = movable[random.nextInt(numMovable)];
+				int i = random.nextInt(rows[row].length);
+				int j = random.nextInt(rows[row].length);
+				swap(layout, occupancy, rows[row], row, i, j);
+				sum += occupancy.getScore();
+				sumSquares += (double) occupancy.getScore() * occupancy.getScore();
+			}
+			evaluations += SAMPLE_MOVES;
+			double mean = sum / SAMPLE_MOVES;
+			startTemperature = Math.max(Math.sqrt(
+					Math.max(sumSquares / SAMPLE_MOVES - mean * mean, 0)), 0.5);
+			if (occupancy.getScore() > bestFit) {
+				bestFit = occupancy.getScore();
+				best = copy(rows);
+			}
+		}
+
+		double temperature = startTemperature;
+		int stuckCount = 0;
+		int level;
+		for (level = 0; level < maxLevels && numMovable > 0; ++level) {
+			if (bestFit == maxFitness || stop.get()) {
+				break;
+			}
+			int oldBestFit = bestFit;
+			int score = occupancy.getScore();
+			int m;
+			for (m = 0; m < movesPerLevel && score < maxFitness; ++m) {
+				int row = movable[random.nextInt(numMovable)];
+				int[] values = rows[row];
+				int i = random.nextInt(values.length);
+				int j = random.nextInt(values.length - 1);
+				if (j >= i) ++j;
+				swap(layout, occupancy, values, row, i, j);
+				int newScore = occupancy.getScore();
+				if (newScore >= score
+						|| random.nextDouble() < Math.exp((newScore - score) / temperature)) {
+					score = newScore;
+				} else {
+					swap(layout, occupancy, values, row, i, j);
+				}
+				if (score > bestFit) {
+					bestFit = score;
+					best = copy(rows);
+				}
+			}
+			evaluations += m;
+			if (bestFit > oldBestFit) {
+				stuckCount = 0;
+				ProgressReporter reporter = SudokuSolver.getReporter();
+				if (reporter.isReporting(ProgressReporter.PROGRESS)) {
+					reporter.report("Try " + t + "; Level " + level +
+							"; Best solution " + bestFit + "/" + maxFitness +
+							"; Temperature " + (float) temperature);
+				}
+			} else if (++stuckCount >= stuckThreshold) {
+				break;
+			}
+			temperature = stuckCount > 0 && stuckCount % REHEAT == 0
+					? startTemperature : temperature * COOLING;
+		}
+		long time = System.nanoTime() - startTime;
+		boolean solved = bestFit == maxFitness;
+		if (solved) stop.set(true);
+		return new TryResult(toGrid(layout, best), bestFit, solved,
+				!solved && stop.get(), level, time, -1, evaluations);
+	}
+
+	/**
+	 * Swap two blank cells of a row, updating the counts
+	 */
+	private static void swap(PuzzleLayout layout, OccupancyCounters occupancy,
+			int[] values, int row, int i, int j) {
+		int offset = layout.getRowOffset(row);
+		occupancy.swap(offset + i, offset + j, values[i], values[j]);
+		int tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+
+	private static void shuffle(int[] values, SplittableRandom random) {
+		for (int i = values.length - 1; i > 0; --i) {
+			int j = random.nextInt(i + 1);
+			int tmp = values[i];
+			values[i] = values[j];
+			values[j] = tmp;
+		}
+	}
+
+	private static int[][] copy(int[][] rows) {
+		int[][] copy = new int[rows.length][];
+		for (int i = 0; i < rows.length; ++i) {
+			copy[i] = rows[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the puzzle with its blank cells filled in from rows
+	 */
+	private static int[][] toGrid(PuzzleLayout layout, int[][] rows) {
+		int[][] grid = new int[layout.getSize()][];
+		int[][] puzzle = layout.getPuzzle();
+		for (int i = 0; i < grid.length; ++i) {
+			grid[i] = puzzle[i].clone();
+		}
+		for (int index = 0; index < layout.getNumBlanks(); ++index) {
+			int row = layout.getBlankRow(index);
+			grid[row][layout.getBlankColumn(index)] = rows[row][layout.getBlankPosition(index)];
+		}
+		return grid;
+	}
+}
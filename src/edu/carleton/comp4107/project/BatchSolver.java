@@ -0,0 +1,345 @@
+package edu.carleton.comp4107.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgap.InvalidConfigurationException;
+
+/**
+ * Solves every puzzle in a file or directory tree in one JVM. Files may be
+ * text, in either format PuzzleReader reads, or packed (see PackedPuzzles).
+ * Puzzles are read one at a time onto a bounded queue, so only a few are
+ * held in memory however large the input is, and taken off it by a fixed
+ * number of workers. Each worker builds its configuration once and reuses it for
+ * every puzzle it solves.
+ *
+ * One line is printed per puzzle as soon as it is finished, so lines come
+ * out of order when there is more than one worker; each line starts with
+ * the puzzle's position in the input. If a worker fails, reading stops and
+ * the batch fails with the worker's exception.
+ */
+public class BatchSolver {
+	/* Puzzles waiting on the queue per worker */
+	private static final int QUEUE_PER_WORKER = 4;
+	/* How long to wait on a full queue before checking for failed workers */
+	private static final long POLL_MILLIS = 100;
+	private static final Job END = new Job(-1, null, null, null);
+	private final int numWorkers;
+	private final int maxTries;
+	private final boolean propagate;
+	private final int xoverType;
+	private final double mutationRate;
+	private final SplittableRandom random;
+	private final AtomicInteger numSolved = new AtomicInteger();
+
+	/**
+	 * @param numWorkers the number of puzzles to solve at once
+	 * @param maxTries the number of attempts to make at each puzzle before
+	 * 	giving up on it
+	 * @param propagate whether to fill in forced cells before solving
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @param random the source of every random choice; each puzzle gets a
+	 * 	generator split from it in input order, so its outcome doesn't depend
+	 * 	on which worker solves it
+	 */
+	public BatchSolver(int numWorkers, int maxTries, boolean propagate,
+			int xoverType, double mutationRate, SplittableRandom random) {
+		this.numWorkers = numWorkers;
+		this.maxTries = maxTries;
+		this.propagate = propagate;
+		this.xoverType = xoverType;
+		this.mutationRate = mutationRate;
+		this.random = random;
+	}
+
+	/**
+	 * Solve every puzzle in a file or directory, then print throughput and
+	 * 	latency figures
+	 * @param path a file holding one or more puzzles, or a directory whose
+	 * 	files (searched recursively, in name order) each hold one or more
+	 * @throws IOException if the path doesn't exist
+	 * @throws IllegalStateException if a worker fails, with the worker's
+	 * 	exception as its cause
+	 * @throws InterruptedException
+	 */
+	public void run(String path) throws IOException, InterruptedException {
+		File root = new File(path);
+		if (!root.exists()) {
+			throw new IOException("No such file or directory: " + path);
+		}
+		List<File> files = new ArrayList<File>();
+		listFiles(root, files);
+
+		final BlockingQueue<Job> queue =
+				new ArrayBlockingQueue<Job>(numWorkers * QUEUE_PER_WORKER);
+		ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+		List<Future<List<Long>>> futures = new ArrayList<Future<List<Long>>>();
+		long startTime = System.nanoTime();
+		for (int w = 0; w < numWorkers; ++w) {
+			final int worker = w;
+			futures.add(executor.submit(new Callable<List<Long>>() {
+				@Override
+				public List<Long> call() throws Exception {
+					return work(worker, queue);
+				}
+			}));
+		}
+
+		int numRead = 0;
+		int numUnreadable = 0;
+		List<Long> latencies = new ArrayList<Long>();
+		try {
+			for (File file : files) {
+				PuzzleReader reader = null;
+				int k = 0;
+				try {
+					if (PackedPuzzles.isPacked(file)) {
+						/* Puzzles are only copied out of the mapping as they
+						 * are queued */
+						PackedPuzzles packed = PackedPuzzles.open(file.getPath());
+						while (k < packed.getCount()) {
+							put(queue, new Job(numRead++, file.getPath() + "#" + (k + 1),
+									packed.get(k++), random.split()), futures);
+						}
+						continue;
+					}
+					reader = new PuzzleReader(file.getPath());
+					int[][] puzzle;
+					while ((puzzle = reader.read()) != null) {
+						put(queue, new Job(numRead++, file.getPath() + "#" + ++k, puzzle,
+								random.split()), futures);
+					}
+				} catch (IOException e) {
+					/* The rest of the file can't be trusted to line up */
+					++numUnreadable;
+					synchronized (System.out) {
+						System.out.println("Puzzle " + numRead++ + " (" + file.getPath() +
+								"#" + ++k + "): unreadable; " + e.getMessage());
+					}
+				} finally {
+					if (reader != null) reader.close();
+				}
+			}
+			for (int w = 0; w < numWorkers; ++w) {
+				put(queue, END, futures);
+			}
+			for (Future<List<Long>> future : futures) {
+				latencies.addAll(future.get());
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			/* Workers still waiting on the queue if reading stopped early are
+			 * interrupted */
+			executor.shutdownNow();
+		}
+		long wallTime = System.nanoTime() - startTime;
+		report(latencies, numUnreadable, wallTime);
+	}
+
+	/**
+	 * Put a job on the queue, waiting while it is full as long as every
+	 * 	worker is still running
+	 * @throws IllegalStateException if a worker has failed, with the
+	 * 	worker's exception as its cause
+	 * @throws InterruptedException
+	 */
+	private static void put(BlockingQueue<Job> queue, Job job,
+			List<Future<List<Long>>> futures) throws InterruptedException {
+		while (!queue.offer(job, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+			for (Future<List<Long>> future : futures) {
+				if (!future.isDone()) continue;
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pack every puzzle in a file or directory into a packed file, which can
+	 * 	then be given to run in their place
+	 * @param path a file holding one or more puzzles, or a directory of
+	 * 	such files, as for run
+	 * @param filename the packed file to write
+	 * @return the number of puzzles packed
+	 * @throws IOException if a puzzle is malformed or a different size from
+	 * 	the first, or a file can't be read or written
+	 */
+	public static int pack(String path, String filename) throws IOException {
+		File root = new File(path);
+		if (!root.exists()) {
+			throw new IOException("No such file or directory: " + path);
+		}
+		List<File> files = new ArrayList<File>();
+		listFiles(root, files);
+		PackedPuzzles.Writer writer = new PackedPuzzles.Writer(filename);
+		try {
+			for (File file : files) {
+				try {
+					packFile(file, writer);
+				} catch (IOException e) {
+					throw new IOException(file.getPath() + ": " + e.getMessage(), e);
+				}
+			}
+			writer.close();
+		} catch (IOException e) {
+			/* Leave no partial file behind; the first failure is the one
+			 * worth reporting */
+			try {
+				writer.close();
+			} catch (IOException ignored) {
+			}
+			new File(filename).delete();
+			throw e;
+		}
+		return writer.getCount();
+	}
+
+	private static void packFile(File file, PackedPuzzles.Writer writer)
+			throws IOException {
+		if (PackedPuzzles.isPacked(file)) {
+			PackedPuzzles packed = PackedPuzzles.open(file.getPath());
+			for (int k = 0; k < packed.getCount(); ++k) {
+				writer.add(packed.get(k));
+			}
+			return;
+		}
+		PuzzleReader reader = new PuzzleReader(file.getPath());
+		try {
+			int[][] puzzle;
+			while ((puzzle = reader.read()) != null) {
+				writer.add(puzzle);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Solve puzzles from the queue until the end marker is taken
+	 * @param worker the worker number
+	 * @param queue the queue of puzzles
+	 * @return the time taken on each puzzle in nanoseconds
+	 */
+	private List<Long> work(int worker, BlockingQueue<Job> queue)
+			throws InvalidConfigurationException, InterruptedException {
+		List<Long> latencies = new ArrayList<Long>();
+		SolverEngine engine = null;
+		Job job;
+		while ((job = queue.take()) != END) {
+			long startTime = System.nanoTime();
+			int[][] puzzle = propagate ? ConstraintPropagator.propagate(job.puzzle)
+					: job.puzzle;
+			PuzzleLayout layout = new PuzzleLayout(puzzle);
+			if (engine == null) {
+				SudokuConfiguration conf = SudokuSolver.createConfiguration(
+						"batch-worker" + worker, puzzle, layout, null, xoverType,
+						mutationRate);
+				engine = SudokuSolver.createEngine(new GeneticEngine(conf), xoverType,
+						mutationRate);
+			}
+			TryResult result;
+			int tries = 0;
+			do {
+				result = engine.solve(tries++, layout, job.random, new AtomicBoolean());
+			} while (!result.isSolved() && tries < maxTries);
+			long time = System.nanoTime() - startTime;
+			latencies.add(time);
+			if (result.isSolved()) numSolved.incrementAndGet();
+
+			int maxFitness = layout.getSize() * layout.getSize() * 2;
+			synchronized (System.out) {
+				System.out.println("Puzzle " + job.index + " (" + job.name + "): " +
+						(result.isSolved() ? "solved" : "unsolved") + " in " +
+						time / 1000000 + "ms after " + tries + " tries; best fitness " +
+						result.getBestFit() + "/" + maxFitness + "; " +
+						SudokuUtils.toLine(result.getGrid()));
+			}
+		}
+		return latencies;
+	}
+
+	private void report(List<Long> latencies, int numUnreadable, long wallTime) {
+		long[] times = new long[latencies.size()];
+		for (int i = 0; i < times.length; ++i) {
+			times[i] = latencies.get(i);
+		}
+		Arrays.sort(times);
+		int numSolved = this.numSolved.get();
+		System.out.println("---------------------------");
+		System.out.println("Batch completed");
+		System.out.println("Puzzles: " + (times.length + numUnreadable) + " (" +
+				numSolved + " solved, " + (times.length - numSolved) + " unsolved, " +
+				numUnreadable + " unreadable)");
+		System.out.println("Wall-clock time: " + wallTime / 1000000 + "ms");
+		System.out.println(String.format("Throughput: %.1f puzzles/sec",
+				times.length / (wallTime / 1e9)));
+		if (times.length > 0) {
+			System.out.println(String.format("Latency: p50 %.2fms, p95 %.2fms, p99 %.2fms",
+					percentile(times, 50) / 1e6, percentile(times, 95) / 1e6,
+					percentile(times, 99) / 1e6));
+		}
+	}
+
+	/**
+	 * @param sorted values in ascending order; must not be empty
+	 * @param p the percentile, from 0 to 100
+	 * @return the smallest value at least p% of the values are no greater
+	 * 	than
+	 */
+	private static long percentile(long[] sorted, int p) {
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * Add a file, or every file under a directory in name order, to a list
+	 */
+	private static void listFiles(File file, List<File> files) {
+		if (!file.isDirectory()) {
+			files.add(file);
+			return;
+		}
+		File[] children = file.listFiles();
+		if (children == null) return;
+		Arrays.sort(children);
+		for (File child : children) {
+			if (!child.isHidden()) listFiles(child, files);
+		}
+	}
+
+	/**
+	 * A puzzle waiting to be solved
+	 */
+	private static class Job {
+		final int index;
+		final String name;
+		final int[][] puzzle;
+		final SplittableRandom random;
+
+		Job(int index, String name, int[][] puzzle, SplittableRandom random) {
+			this.index = index;
+			this.name = name;
+			this.puzzle = puzzle;
+			this.random = random;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package edu.carleton.comp4107.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jgap.Configuration;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+
+/**
+ * A snapshot of one attempt at solving a puzzle with a single population,
+ * from which the attempt can be resumed: the puzzle, the population, the
+ * generation and stuck counters, and the seed of the random numbers the
+ * attempt goes on to use. The population's rows are copied when the
+ * snapshot is taken, so that it can be written out on another thread while
+ * the population evolves.
+ *
+ * Selection may put the same chromosome in the population several times,
+ * and mutation then changes it in every place at once; the snapshot keeps
+ * each chromosome once, and records which one each place of the population
+ * holds. It also keeps each chromosome's age, by which JGAP's
+ * BestChromosomesSelector breaks ties in fitness. The restored population
+ * thus evolves exactly as the original would have.
+ *
+ * A snapshot is written in big-endian order as:
+ * 	the 4 bytes MAGIC
+ * 	the run's seed, as a long, and the try number, generation number,
+ * 		generations without improvement and best fitness so far, as ints
+ * 	the seed of the attempt's random numbers from here on, as a long
+ * 	the grid size, as an int, and the puzzle's cells row by row, one
+ * 		unsigned byte each, 0 for blank
+ * 	the population size and the number of distinct chromosomes in it, as
+ * 		ints
+ * 	for each place in the population, the number of the chromosome it
+ * 		holds, as an int
+ * 	the age of each chromosome, as an int
+ * 	the values of each chromosome's blank cells in the order of
+ * 		PuzzleLayout, one unsigned byte each
+ */
+public class Checkpoint {
+	/** The first bytes of every snapshot */
+	public static final byte[] MAGIC = {'S', 'D', 'K', 'C'};
+	private final long seed;
+	private final int tryNum;
+	private final int generation;
+	private final int stuckCount;
+	private final int bestFit;
+	private final long randomSeed;
+	private final int[][] puzzle;
+	/* The number of the chromosome at each place in the population */
+	private final int[] places;
+	private final int[] ages;
+	private final byte[] cells;
+
+	private Checkpoint(long seed, int tryNum, int generation, int stuckCount,
+			int bestFit, long randomSeed, int[][] puzzle, int[] places,
+			int[] ages, byte[] cells) {
+		this.seed = seed;
+		this.tryNum = tryNum;
+		this.generation = generation;
+		this.stuckCount = stuckCount;
+		this.bestFit = bestFit;
+		this.randomSeed = randomSeed;
+		this.puzzle = puzzle;
+		this.places = places;
+		this.ages = ages;
+		this.cells = cells;
+	}
+
+	/**
+	 * Take a snapshot of an attempt at the start of a generation
+	 * @param seed the seed of the whole run
+	 * @param tryNum the try number
+	 * @param generation the generation number
+	 * @param stuckCount the number of generations without improvement
+	 * @param bestFit the best fitness so far
+	 * @param randomSeed the seed the attempt's random numbers are drawn
+	 * 	from, starting with this generation
+	 * @param layout the layout of the puzzle
+	 * @param pop the population
+	 * @return the snapshot
+	 */
+	public static Checkpoint capture(long seed, int tryNum, int generation,
+			int stuckCount, int bestFit, long randomSeed, PuzzleLayout layout,
+			Population pop) {
+		Map<IChromosome, Integer> numbers = new IdentityHashMap<IChromosome, Integer>();
+		int[] places = new int[pop.size()];
+		int[] ages = new int[pop.size()];
+		byte[] cells = new byte[pop.size() * layout.getNumBlanks()];
+		int p = 0;
+		for (int i = 0; i < pop.size(); ++i) {
+			SudokuChromosome chrom = (SudokuChromosome) pop.getChromosome(i);
+			Integer number = numbers.get(chrom);
+			if (number != null) {
+				places[i] = number;
+				continue;
+			}
+			places[i] = numbers.size();
+			numbers.put(chrom, places[i]);
+			ages[places[i]] = chrom.getAge();
+			for (int row = 0; row < layout.getSize(); ++row) {
+				for (int value : chrom.getRow(row)) {
+					cells[p++] = (byte) value;
+				}
+			}
+		}
+		return new Checkpoint(seed, tryNum, generation, stuckCount, bestFit,
+				randomSeed, layout.getPuzzle(), places,
+				Arrays.copyOf(ages, numbers.size()), Arrays.copyOf(cells, p));
+	}
+
+	/**
+	 * Read a snapshot written by writeTo
+	 * @param filename the file to read
+	 * @return the snapshot
+	 * @throws IOException if the file can't be read or doesn't hold a valid
+	 * 	snapshot
+	 */
+	public static Checkpoint read(String filename) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(filename)));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(SudokuSolver.DATA_ERR + "Not a checkpoint file");
+			}
+			long seed = in.readLong();
+			int tryNum = in.readInt();
+			int generation = in.readInt();
+			int stuckCount = in.readInt();
+			int bestFit = in.readInt();
+			long randomSeed = in.readLong();
+			int size = in.readInt();
+			int root = (int) Math.round(Math.sqrt(size));
+			if (size <= 0 || size > 255 || root * root != size) {
+				throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.SIZE_ERR);
+			}
+			int[][] puzzle = new int[size][];
+			for (int i = 0; i < size; ++i) {
+				puzzle[i] = new int[size];
+				for (int j = 0; j < size; ++j) {
+					puzzle[i][j] = in.readUnsignedByte();
+				}
+			}
+			PuzzleLayout layout = new PuzzleLayout(puzzle);
+			int popSize = in.readInt();
+			int numChromosomes = in.readInt();
+			if (popSize <= 0 || numChromosomes <= 0 || numChromosomes > popSize
+					|| tryNum < 0 || generation < 0 || stuckCount < 0
+					|| (long) numChromosomes * layout.getNumBlanks() > Integer.MAX_VALUE) {
+				throw new IOException(SudokuSolver.DATA_ERR + "Invalid checkpoint header");
+			}
+			int[] places = new int[popSize];
+			for (int i = 0; i < popSize; ++i) {
+				places[i] = in.readInt();
+				if (places[i] < 0 || places[i] >= numChromosomes) {
+					throw new IOException(SudokuSolver.DATA_ERR +
+							"Invalid chromosome number at place " + (i + 1));
+				}
+			}
+			int[] ages = new int[numChromosomes];
+			for (int i = 0; i < numChromosomes; ++i) {
+				ages[i] = in.readInt();
+				if (ages[i] < 0) {
+					throw new IOException(SudokuSolver.DATA_ERR +
+							"Invalid age of individual " + (i + 1));
+				}
+			}
+			byte[] cells = new byte[numChromosomes * layout.getNumBlanks()];
+			in.readFully(cells);
+			if (in.read() >= 0) {
+				throw new IOException(SudokuSolver.DATA_ERR + "Unexpected data after checkpoint");
+			}
+			checkPermutations(layout, numChromosomes, cells);
+			return new Checkpoint(seed, tryNum, generation, stuckCount, bestFit,
+					randomSeed, puzzle, places, ages, cells);
+		} catch (EOFException e) {
+			throw new IOException(SudokuSolver.DATA_ERR + "Checkpoint file is truncated");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Make sure every row of every individual holds the values missing from
+	 * 	that row of the puzzle
+	 */
+	private static void checkPermutations(PuzzleLayout layout, int numChromosomes,
+			byte[] cells) throws IOException {
+		int p = 0;
+		for (int i = 0; i < numChromosomes; ++i) {
+			for (int row = 0; row < layout.getSize(); ++row) {
+				int[] values = new int[layout.getRowLength(row)];
+				for (int j = 0; j < values.length; ++j) {
+					values[j] = cells[p++] & 0xFF;
+				}
+				Arrays.sort(values);
+				if (!Arrays.equals(values, layout.getMissingValues(row))) {
+					throw new IOException(SudokuSolver.DATA_ERR + "Individual " + (i + 1) +
+							" of the checkpoint doesn't fit the puzzle at row " + (row + 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the snapshot
+	 * @param out the stream to write to; it is not closed
+	 * @throws IOException if the stream can't be written
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.write(MAGIC);
+		data.writeLong(seed);
+		data.writeInt(tryNum);
+		data.writeInt(generation);
+		data.writeInt(stuckCount);
+		data.writeInt(bestFit);
+		data.writeLong(randomSeed);
+		data.writeInt(puzzle.length);
+		for (int[] row : puzzle) {
+			for (int value : row) {
+				data.writeByte(value);
+			}
+		}
+		data.writeInt(places.length);
+		data.writeInt(ages.length);
+		for (int place : places) {
+			data.writeInt(place);
+		}
+		for (int age : ages) {
+			data.writeInt(age);
+		}
+		data.write(cells);
+		data.flush();
+	}
+
+	/**
+	 * Recreate the population
+	 * @param conf the configuration of the population
+	 * @param layout the layout of the puzzle, which must be getPuzzle()
+	 * @param arena the arena to take the chromosomes from, or null
+	 * @return the population
+	 * @throws InvalidConfigurationException
+	 */
+	public Population restorePopulation(Configuration conf, PuzzleLayout layout,
+			ChromosomeArena arena) throws InvalidConfigurationException {
+		int size = layout.getSize();
+		SudokuChromosome[] chromosomes = new SudokuChromosome[ages.length];
+		int p = 0;
+		for (int i = 0; i < ages.length; ++i) {
+			SudokuChromosome chrom = arena != null ? arena.obtain()
+					: new SudokuChromosome(conf, layout, new int[size][], new boolean[size]);
+			for (int row = 0; row < size; ++row) {
+				int[] values = new int[layout.getRowLength(row)];
+				for (int j = 0; j < values.length; ++j) {
+					values[j] = cells[p++] & 0xFF;
+				}
+				chrom.setRow(row, values, true);
+			}
+			chrom.setAge(ages[i]);
+			chromosomes[i] = chrom;
+		}
+		Population pop = new Population(conf, places.length);
+		for (int place : places) {
+			pop.addChromosome(chromosomes[place]);
+		}
+		return pop;
+	}
+
+	/**
+	 * @return the seed of the whole run
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of the try the snapshot is of
+	 */
+	public int getTry() {
+		return tryNum;
+	}
+
+	/**
+	 * @return the generation the snapshot was taken at the start of
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return the number of generations without improvement so far
+	 */
+	public int getStuckCount() {
+		return stuckCount;
+	}
+
+	/**
+	 * @return the best fitness so far
+	 */
+	public int getBestFit() {
+		return bestFit;
+	}
+
+	/**
+	 * @return the seed the attempt's random numbers are drawn from, starting
+	 * 	with the snapshot's generation
+	 */
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	/**
+	 * @return the puzzle being solved, as given to the GA
+	 */
+	public int[][] getPuzzle() {
+		return puzzle;
+	}
+}
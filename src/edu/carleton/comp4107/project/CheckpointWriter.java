@@ -0,0 +1,106 @@
+package edu.carleton.comp4107.project;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes snapshots to a file on a background thread, so that evolving
+ * never waits on the disk. Each snapshot is written to a temporary file
+ * that then replaces the checkpoint file, so the file always holds a whole
+ * snapshot even if the process dies while writing. If snapshots are taken
+ * faster than they can be written, the older ones are skipped.
+ */
+public class CheckpointWriter {
+	private final File file;
+	private final File tmp;
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+	private final Object end = new Object();
+	private final Thread writer;
+	private volatile IOException error;
+	private int written;
+
+	/**
+	 * Start the writer
+	 * @param path the checkpoint file, replaced by each snapshot written
+	 */
+	public CheckpointWriter(String path) {
+		this.file = new File(path);
+		this.tmp = new File(path + ".tmp");
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "checkpoint-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a snapshot to be written, without waiting
+	 * @param checkpoint the snapshot
+	 */
+	public void submit(Checkpoint checkpoint) {
+		queue.add(checkpoint);
+	}
+
+	/**
+	 * Wait for the last snapshot queued to be written and stop the writer
+	 * @return the number of snapshots written
+	 * @throws IOException if a snapshot couldn't be written
+	 * @throws InterruptedException
+	 */
+	public int close() throws IOException, InterruptedException {
+		queue.add(end);
+		writer.join();
+		if (error != null) throw error;
+		return written;
+	}
+
+	/**
+	 * Write snapshots as they are queued, skipping any with a later one
+	 * 	behind them, until the end marker is taken
+	 */
+	private void write() {
+		try {
+			boolean done = false;
+			while (!done) {
+				Object next = queue.take();
+				done = next == end;
+				Object later;
+				while (!done && (later = queue.poll()) != null) {
+					if (later == end) {
+						done = true;
+					} else {
+						next = later;
+					}
+				}
+				if (next != end) writeSnapshot((Checkpoint) next);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeSnapshot(Checkpoint checkpoint) {
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				checkpoint.writeTo(out);
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			++written;
+		} catch (IOException e) {
+			if (error == null) error = e;
+		}
+	}
+}
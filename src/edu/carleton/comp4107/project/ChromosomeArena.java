@@ -0,0 +1,116 @@
+package edu.carleton.comp4107.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgap.Configuration;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+
+/**
+ * Recycles the chromosomes of one population from generation to
+ * generation. Every chromosome the arena hands out is tracked; after each
+ * generation, those that didn't make it into the new population are taken
+ * back, together with the row arrays and occupancy counters that belonged
+ * to them alone, and handed out again for the next generation's offspring
+ * and clones. Once the free lists have grown to the size of a generation's
+ * turnover, evolving allocates almost nothing.
+ *
+ * An arena belongs to the thread evolving its population and is not
+ * thread-safe. A chromosome from an arena must not be kept outside the
+ * population across generations; take a copy of its grid instead.
+ */
+public class ChromosomeArena {
+	private final Configuration conf;
+	private final PuzzleLayout layout;
+	private List<SudokuChromosome> inUse = new ArrayList<SudokuChromosome>();
+	private List<SudokuChromosome> survivors = new ArrayList<SudokuChromosome>();
+	private final List<SudokuChromosome> free = new ArrayList<SudokuChromosome>();
+	/* Free row arrays, by length */
+	private final List<List<int[]>> freeRows = new ArrayList<List<int[]>>();
+	private final List<OccupancyCounters> freeCounters = new ArrayList<OccupancyCounters>();
+	private int generation;
+
+	/**
+	 * @param conf the configuration of the population
+	 * @param layout the layout of the puzzle being solved
+	 */
+	public ChromosomeArena(Configuration conf, PuzzleLayout layout) {
+		this.conf = conf;
+		this.layout = layout;
+		for (int i = 0; i <= layout.getSize(); ++i) {
+			freeRows.add(new ArrayList<int[]>());
+		}
+	}
+
+	/**
+	 * @return a chromosome with no rows set, to be filled in with setRow
+	 * @throws InvalidConfigurationException
+	 */
+	SudokuChromosome obtain() throws InvalidConfigurationException {
+		SudokuChromosome chrom;
+		if (free.isEmpty()) {
+			chrom = new SudokuChromosome(conf, layout, new int[layout.getSize()][],
+					new boolean[layout.getSize()], this);
+		} else {
+			chrom = free.remove(free.size() - 1);
+		}
+		inUse.add(chrom);
+		return chrom;
+	}
+
+	/**
+	 * @param length the length of the array
+	 * @return an array of the given length with unspecified contents
+	 */
+	int[] obtainRow(int length) {
+		List<int[]> rows = freeRows.get(length);
+		return rows.isEmpty() ? new int[length] : rows.remove(rows.size() - 1);
+	}
+
+	/**
+	 * @return occupancy counters for the puzzle with unspecified counts, or
+	 * 	null if there are none free
+	 */
+	OccupancyCounters obtainCounters() {
+		return freeCounters.isEmpty() ? null : freeCounters.remove(freeCounters.size() - 1);
+	}
+
+	/**
+	 * Take back a row array no chromosome uses any more
+	 */
+	void freeRow(int[] row) {
+		freeRows.get(row.length).add(row);
+	}
+
+	/**
+	 * Take back occupancy counters no chromosome uses any more
+	 */
+	void freeCounters(OccupancyCounters counters) {
+		freeCounters.add(counters);
+	}
+
+	/**
+	 * Take back every chromosome handed out by this arena that isn't in the
+	 * 	population
+	 * @param live the population after a generation
+	 */
+	public void recycle(Population live) {
+		++generation;
+		for (Object chrom : live.getChromosomes()) {
+			((SudokuChromosome) chrom).mark(this, generation);
+		}
+		survivors.clear();
+		for (SudokuChromosome chrom : inUse) {
+			if (chrom.isMarked(generation)) {
+				survivors.add(chrom);
+			} else {
+				chrom.release();
+				free.add(chrom);
+			}
+		}
+		List<SudokuChromosome> tmp = inUse;
+		inUse = survivors;
+		survivors = tmp;
+	}
+}
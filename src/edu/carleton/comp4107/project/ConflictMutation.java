@@ -0,0 +1,84 @@
+package edu.carleton.comp4107.project;
+
+import java.util.List;
+
+import org.jgap.Population;
+import org.jgap.RandomGenerator;
+
+/**
+ * A swap mutation aimed at the cells that break the rules. A blank cell is
+ * in conflict if its value occurs more than once in its column or its box,
+ * going by the chromosome's occupancy counters. Each row is mutated with
+ * the same probability as by SwapMutation, but one of the two cells
+ * swapped is always a conflicting one, and the other is too if the row has
+ * another; rows without conflicts are left alone, since any swap in them
+ * could only introduce one.
+ */
+public class ConflictMutation extends SwapMutation {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param mutationRate the probability of swapping two cells of each row
+	 */
+	public ConflictMutation(double mutationRate) {
+		super(mutationRate);
+	}
+
+	/* GeneticOperator declares candidates as a raw List */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void operate(Population population, List candidates) {
+		int size = population.size();
+		if (size == 0) return;
+		RandomGenerator rand = population.getConfiguration().getRandomGenerator();
+		double mutationRate = getMutationRate();
+		PuzzleLayout layout = ((SudokuChromosome) population.getChromosome(0)).getLayout();
+		int[] conflicts = new int[layout.getSize()];
+		for (int i = 0; i < size; ++i) {
+			SudokuChromosome chromosome = (SudokuChromosome) population.getChromosome(i);
+			for (int row = 0; row < layout.getSize(); ++row) {
+				int gSize = layout.getRowLength(row);
+				if (rand.nextDouble() >= mutationRate || gSize < 2) continue;
+				int numConflicts = findConflicts(chromosome, row, conflicts);
+				if (numConflicts == 0) continue;
+				int a = rand.nextInt(numConflicts);
+				int first = conflicts[a];
+				int second;
+				if (numConflicts > 1) {
+					/* Another conflicting cell, chosen from the rest */
+					int b = rand.nextInt(numConflicts - 1);
+					second = conflicts[b < a ? b : b + 1];
+				} else {
+					int b = rand.nextInt(gSize - 1);
+					second = b < first ? b : b + 1;
+				}
+				chromosome.swap(row, first, second);
+			}
+		}
+	}
+
+	/**
+	 * Find the conflicting blank cells of a row
+	 * @param chromosome the chromosome
+	 * @param row the row number
+	 * @param conflicts filled with the positions of the conflicting cells
+	 * 	among the row's blank cells
+	 * @return the number of conflicting cells
+	 */
+	private static int findConflicts(SudokuChromosome chromosome, int row,
+			int[] conflicts) {
+		PuzzleLayout layout = chromosome.getLayout();
+		OccupancyCounters occupancy = chromosome.countOccupancy();
+		int[] values = chromosome.getRow(row);
+		int offset = layout.getRowOffset(row);
+		int count = 0;
+		for (int j = 0; j < values.length; ++j) {
+			int value = values[j];
+			if (occupancy.getColumnCount(layout.getBlankColumn(offset + j), value) > 1
+					|| occupancy.getBoxCount(layout.getBlankBox(offset + j), value) > 1) {
+				conflicts[count++] = j;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,156 @@
+package edu.carleton.comp4107.project;
+
+/**
+ * Fills in the cells of a puzzle that are forced by the rows, columns and
+ * boxes around them, so that the GA has fewer cells to search. Two rules
+ * are applied until neither makes progress:
+ * 	naked single: a cell with only one candidate value left
+ * 	hidden single: a value with only one possible cell left in a row,
+ * 		column or box
+ */
+public class ConstraintPropagator {
+	private final int size;
+	private final int boxSize;
+	private final int[][] grid;
+	/* Bit v-1 of candidates[row][col] is set if v may go in the cell */
+	private final long[][] candidates;
+	private boolean contradiction;
+
+	private ConstraintPropagator(int[][] puzzle) {
+		size = puzzle.length;
+		boxSize = (int)Math.round(Math.sqrt(size));
+		grid = new int[size][];
+		for (int i = 0; i < size; ++i) {
+			grid[i] = puzzle[i].clone();
+		}
+		long all = size == 64 ? -1L : (1L << size) - 1;
+		candidates = new long[size][size];
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (grid[i][j] == SudokuUtils.BLANK) candidates[i][j] = all;
+			}
+		}
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (grid[i][j] != SudokuUtils.BLANK) eliminate(i, j, grid[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * Fill in every cell of a puzzle that can be deduced by naked and hidden
+	 * 	singles. Grids larger than 64x64 are returned unchanged.
+	 * @param puzzle the puzzle; it is not modified
+	 * @return a copy of the puzzle with forced cells filled in
+	 */
+	public static int[][] propagate(int[][] puzzle) {
+		if (puzzle.length > SudokuFitnessFunction.MAX_BITMASK_SIZE) {
+			int[][] copy = new int[puzzle.length][];
+			for (int i = 0; i < puzzle.length; ++i) copy[i] = puzzle[i].clone();
+			return copy;
+		}
+		ConstraintPropagator prop = new ConstraintPropagator(puzzle);
+		prop.run();
+		return prop.grid;
+	}
+
+	private void run() {
+		boolean progress = true;
+		while (progress && !contradiction) {
+			progress = false;
+			for (int i = 0; i < size; ++i) {
+				for (int j = 0; j < size; ++j) {
+					if (grid[i][j] != SudokuUtils.BLANK) continue;
+					long mask = candidates[i][j];
+					if (mask == 0) {
+						contradiction = true;
+						return;
+					}
+					if (Long.bitCount(mask) == 1) {
+						place(i, j, Long.numberOfTrailingZeros(mask) + 1);
+						progress = true;
+					}
+				}
+			}
+			for (int unit = 0; unit < size && !contradiction; ++unit) {
+				progress |= hiddenSingles(unit, 0);
+				progress |= hiddenSingles(unit, 1);
+				progress |= hiddenSingles(unit, 2);
+			}
+		}
+	}
+
+	/**
+	 * Place every value that has only one possible cell in a unit
+	 * @param unit the unit number
+	 * @param kind 0 for a row, 1 for a column, 2 for a box
+	 * @return whether any cell was filled
+	 */
+	private boolean hiddenSingles(int unit, int kind) {
+		boolean progress = false;
+		for (int value = 1; value <= size; ++value) {
+			long bit = 1L << (value - 1);
+			int count = 0;
+			int row = -1, col = -1;
+			for (int k = 0; k < size; ++k) {
+				int i = cellRow(unit, kind, k);
+				int j = cellCol(unit, kind, k);
+				if (grid[i][j] == value) {
+					count = -1;
+					break;
+				}
+				if (grid[i][j] == SudokuUtils.BLANK && (candidates[i][j] & bit) != 0) {
+					++count;
+					row = i;
+					col = j;
+				}
+			}
+			if (count == 1) {
+				place(row, col, value);
+				progress = true;
+			}
+		}
+		return progress;
+	}
+
+	private int cellRow(int unit, int kind, int k) {
+		switch (kind) {
+		case 0: return unit;
+		case 1: return k;
+		default: return (unit / boxSize) * boxSize + k / boxSize;
+		}
+	}
+
+	private int cellCol(int unit, int kind, int k) {
+		switch (kind) {
+		case 0: return k;
+		case 1: return unit;
+		default: return (unit % boxSize) * boxSize + k % boxSize;
+		}
+	}
+
+	private void place(int row, int col, int value) {
+		grid[row][col] = value;
+		candidates[row][col] = 0;
+		eliminate(row, col, value);
+	}
+
+	/**
+	 * Remove a value from the candidates of every cell sharing a row, column
+	 * 	or box with (row, col)
+	 */
+	private void eliminate(int row, int col, int value) {
+		long keep = ~(1L << (value - 1));
+		for (int k = 0; k < size; ++k) {
+			candidates[row][k] &= keep;
+			candidates[k][col] &= keep;
+		}
+		int boxRow = (row / boxSize) * boxSize;
+		int boxCol = (col / boxSize) * boxSize;
+		for (int i = boxRow; i < boxRow + boxSize; ++i) {
+			for (int j = boxCol; j < boxCol + boxSize; ++j) {
+				candidates[i][j] &= keep;
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package edu.carleton.comp4107.project;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An exact solver: Knuth's Algorithm X over the exact cover formulation of
+ * Sudoku, using dancing links stored in parallel int arrays.
+ *
+ * Each candidate (row, column, value) is one row of the cover matrix and
+ * covers four constraints: the cell is filled, and the value appears in
+ * the row, the column and the box.
+ */
+public class DancingLinks {
+	private final int size;
+	private final int boxSize;
+	private final AtomicBoolean stop;
+	/* The value to try first for each cell, or null */
+	private final int[] hint;
+	/* Node 0 is the root, nodes 1..numColumns are the column headers and the
+	 * rest are the 1s of the matrix */
+	private final int[] left;
+	private final int[] right;
+	private final int[] up;
+	private final int[] down;
+	private final int[] column;
+	private final int[] candidate;
+	private final int[] colSize;
+	private int numNodes;
+	private final int[] chosen;
+
+	private DancingLinks(int[][] puzzle, int[][] hintGrid, AtomicBoolean stop) {
+		this.size = puzzle.length;
+		this.boxSize = (int)Math.round(Math.sqrt(size));
+		this.stop = stop;
+		if (hintGrid == null) {
+			hint = null;
+		} else {
+			hint = new int[size * size];
+			for (int i = 0; i < size; ++i) {
+				for (int j = 0; j < size; ++j) hint[i * size + j] = hintGrid[i][j];
+			}
+		}
+		this.chosen = new int[size * size];
+		int numColumns = 4 * size * size;
+		int numCandidates = 0;
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				numCandidates += puzzle[i][j] == SudokuUtils.BLANK ? size : 1;
+			}
+		}
+		int capacity = 1 + numColumns + 4 * numCandidates;
+		left = new int[capacity];
+		right = new int[capacity];
+		up = new int[capacity];
+		down = new int[capacity];
+		column = new int[capacity];
+		candidate = new int[capacity];
+		colSize = new int[numColumns + 1];
+
+		for (int c = 0; c <= numColumns; ++c) {
+			left[c] = c - 1;
+			right[c] = c + 1;
+			up[c] = c;
+			down[c] = c;
+		}
+		left[0] = numColumns;
+		right[numColumns] = 0;
+		numNodes = numColumns + 1;
+
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				int given = puzzle[i][j];
+				for (int v = 1; v <= size; ++v) {
+					if (given == SudokuUtils.BLANK || given == v) {
+						addCandidate(i, j, v);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solve a puzzle exactly
+	 * @param puzzle the puzzle; it is not modified
+	 * @param stop checked while searching; the search gives up once it is
+	 * 	set. May be null.
+	 * @return the solved grid, or null if the puzzle has no solution or the
+	 * 	search was stopped
+	 */
+	public static int[][] solve(int[][] puzzle, AtomicBoolean stop) {
+		return solve(puzzle, null, stop);
+	}
+
+	/**
+	 * Solve a puzzle exactly, trying the values of a guessed solution before
+	 * 	any others. The guess only changes the order of the search, so a
+	 * 	solution is found whenever one exists; the closer the guess, the
+	 * 	less backtracking is needed.
+	 * @param puzzle the puzzle; it is not modified
+	 * @param guess a filled-in grid to take values from first, or null
+	 * @param stop checked while searching; the search gives up once it is
+	 * 	set. May be null.
+	 * @return the solved grid, or null if the puzzle has no solution or the
+	 * 	search was stopped
+	 */
+	public static int[][] solve(int[][] puzzle, int[][] guess, AtomicBoolean stop) {
+		DancingLinks dlx = new DancingLinks(puzzle, guess, stop);
+		if (!dlx.search(0)) {
+			return null;
+		}
+		int size = puzzle.length;
+		int[][] grid = new int[size][size];
+		for (int k = 0; k < size * size; ++k) {
+			int id = dlx.chosen[k];
+			grid[id / (size * size)][(id / size) % size] = id % size + 1;
+		}
+		return grid;
+	}
+
+	private void addCandidate(int row, int col, int value) {
+		int box = (row / boxSize) * boxSize + col / boxSize;
+		int v = value - 1;
+		int n2 = size * size;
+		int id = (row * size + col) * size + v;
+		int first = numNodes;
+		addNode(1 + row * size + col, id);
+		addNode(1 + n2 + row * size + v, id);
+		addNode(1 + 2 * n2 + col * size + v, id);
+		addNode(1 + 3 * n2 + box * size + v, id);
+		for (int node = first; node < numNodes; ++node) {
+			left[node] = node == first ? numNodes - 1 : node - 1;
+			right[node] = node == numNodes - 1 ? first : node + 1;
+		}
+	}
+
+	private void addNode(int col, int id) {
+		int node = numNodes++;
+		column[node] = col;
+		candidate[node] = id;
+		up[node] = up[col];
+		down[node] = col;
+		down[up[col]] = node;
+		up[col] = node;
+		++colSize[col];
+	}
+
+	private boolean search(int k) {
+		if (right[0] == 0) {
+			return true;
+		}
+		if (stop != null && stop.get()) {
+			return false;
+		}
+		int best = right[0];
+		for (int c = right[best]; c != 0; c = right[c]) {
+			if (colSize[c] < colSize[best]) best = c;
+		}
+		if (colSize[best] == 0) {
+			return false;
+		}
+		cover(best);
+		/* With a hint, take the hinted rows in a first pass and the rest in a
+		 * second */
+		for (int pass = hint == null ? 1 : 0; pass < 2; ++pass) {
+			for (int r = down[best]; r != best; r = down[r]) {
+				if (hint != null && isHinted(candidate[r]) == (pass == 1)) continue;
+				chosen[k] = candidate[r];
+				for (int j = right[r]; j != r; j = right[j]) cover(column[j]);
+				if (search(k + 1)) {
+					return true;
+				}
+				for (int j = left[r]; j != r; j = left[j]) uncover(column[j]);
+			}
+		}
+		uncover(best);
+		return false;
+	}
+
+	private boolean isHinted(int id) {
+		return hint[id / size] == id % size + 1;
+	}
+
+	private void cover(int c) {
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for (int i = down[c]; i != c; i = down[i]) {
+			for (int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				--colSize[column[j]];
+			}
+		}
+	}
+
+	private void uncover(int c) {
+		for (int i = up[c]; i != c; i = up[i]) {
+			for (int j = left[i]; j != i; j = left[j]) {
+				++colSize[column[j]];
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		}
+		right[left[c]] = c;
+		left[right[c]] = c;
+	}
+}
@@ -0,0 +1,24 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves a puzzle exactly with dancing links
+ */
+public class DlxEngine implements SolverEngine {
+	@Override
+	public TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop) {
+		long startTime = System.nanoTime();
+		int[][] puzzle = layout.getPuzzle();
+		int[][] grid = DancingLinks.solve(puzzle, stop);
+		long time = System.nanoTime() - startTime;
+		if (grid == null) {
+			return new TryResult(puzzle, 0, false, stop.get(), 0, time);
+		}
+		stop.set(true);
+		return new TryResult(grid, layout.getSize() * layout.getSize() * 2, true,
+				false, 0, time);
+	}
+}
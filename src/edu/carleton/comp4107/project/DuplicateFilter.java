@@ -0,0 +1,119 @@
+package edu.carleton.comp4107.project;
+
+import org.jgap.Configuration;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+import org.jgap.RandomGenerator;
+
+/**
+ * Finds individuals of a population identical to others, going by their
+ * hashes, and replaces each with a copy swapped in one random row, so that
+ * no evaluations are spent on clones and selection can't fill the
+ * population with copies of one individual. The first of a set of
+ * identical individuals is kept. If the swapped copy turns out to be a
+ * duplicate too it is swapped again, and after a few tries replaced with a
+ * random individual instead.
+ *
+ * The hashes seen are kept in an open-addressing table stamped with the
+ * number of the pass, so that it needn't be cleared from one generation to
+ * the next. A filter is made for one run of one population, and used on
+ * the thread evolving it.
+ */
+public class DuplicateFilter {
+	private static final int MAX_SWAPS = 5;
+	private final Configuration conf;
+	private final PuzzleLayout layout;
+	private final ChromosomeArena arena;
+	private long[] hashes = new long[0];
+	private int[] stamps = new int[0];
+	private int pass;
+	private long totalReplaced;
+
+	/**
+	 * @param conf the configuration of the population
+	 * @param layout the layout of the puzzle
+	 * @param arena the arena the population's chromosomes come from, or null
+	 */
+	public DuplicateFilter(Configuration conf, PuzzleLayout layout,
+			ChromosomeArena arena) {
+		this.conf = conf;
+		this.layout = layout;
+		this.arena = arena;
+	}
+
+	/**
+	 * Replace every individual identical to one before it in the population
+	 * @param pop the population
+	 * @return the number of individuals replaced
+	 * @throws InvalidConfigurationException
+	 */
+	public int replaceDuplicates(Population pop) throws InvalidConfigurationException {
+		int size = pop.size();
+		if (stamps.length < 2 * size) {
+			int capacity = Integer.highestOneBit(Math.max(2 * size, 2) - 1) << 1;
+			hashes = new long[capacity];
+			stamps = new int[capacity];
+			pass = 0;
+		}
+		++pass;
+		RandomGenerator rand = conf.getRandomGenerator();
+		int replaced = 0;
+		for (int i = 0; i < size; ++i) {
+			SudokuChromosome chrom = (SudokuChromosome) pop.getChromosome(i);
+			if (add(chrom.getHash())) continue;
+			SudokuChromosome copy = (SudokuChromosome) chrom.clone();
+			boolean unique = false;
+			for (int s = 0; s < MAX_SWAPS && !unique; ++s) {
+				swapRandomCells(copy, rand);
+				unique = add(copy.getHash());
+			}
+			if (!unique) {
+				copy = SudokuSolver.randomChromosome(conf, layout, arena);
+				add(copy.getHash());
+			}
+			pop.setChromosome(i, copy);
+			++replaced;
+		}
+		totalReplaced += replaced;
+		return replaced;
+	}
+
+	/**
+	 * @return the number of individuals replaced over the whole run
+	 */
+	public long getTotalReplaced() {
+		return totalReplaced;
+	}
+
+	/**
+	 * Swap two blank cells of a random row that has more than one
+	 */
+	private void swapRandomCells(SudokuChromosome chrom, RandomGenerator rand) {
+		int size = layout.getSize();
+		int start = rand.nextInt(size);
+		for (int r = 0; r < size; ++r) {
+			int row = (start + r) % size;
+			int length = layout.getRowLength(row);
+			if (length < 2) continue;
+			int i = rand.nextInt(length);
+			int j = rand.nextInt(length - 1);
+			chrom.swap(row, i, j < i ? j : j + 1);
+			return;
+		}
+	}
+
+	/**
+	 * @return true if the hash hadn't been seen yet in this pass
+	 */
+	private boolean add(long hash) {
+		int mask = hashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (stamps[slot] == pass) {
+			if (hashes[slot] == hash) return false;
+			slot = (slot + 1) & mask;
+		}
+		stamps[slot] = pass;
+		hashes[slot] = hash;
+		return true;
+	}
+}
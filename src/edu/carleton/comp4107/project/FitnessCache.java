@@ -0,0 +1,168 @@
+package edu.carleton.comp4107.project;
+
+import java.util.Arrays;
+
+/**
+ * A bounded map from chromosome hashes to fitness values, so that a
+ * chromosome identical to one scored recently needn't be scored again.
+ * Entries are evicted by the clock algorithm: a hit marks an entry as
+ * referenced, and an entry is only replaced once the clock hand has passed
+ * it without it being referenced since.
+ *
+ * The cache is split into segments, chosen by the high bits of the hash,
+ * each with its own lock, so that threads evaluating a population in
+ * parallel seldom wait for each other. Within a segment, each hash can
+ * only be stored in one of a few slots, chosen by its low bits, and the
+ * clock runs over those slots alone.
+ *
+ * Hashes are 64 bits and are trusted: two different chromosomes with the
+ * same hash would be given the same fitness.
+ */
+public class FitnessCache {
+	/* The number of slots a hash can be stored in */
+	private static final int WAYS = 4;
+	private static final int MAX_SEGMENTS = 16;
+	private final Segment[] segments;
+	private final int setMask;
+
+	/**
+	 * @param capacity the most fitness values to hold; rounded up to a
+	 * 	power of two
+	 */
+	public FitnessCache(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(capacity, WAYS) - 1) << 1;
+		int numSegments = Math.min(MAX_SEGMENTS, slots / WAYS);
+		int sets = slots / WAYS / numSegments;
+		segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; ++i) {
+			segments[i] = new Segment(sets);
+		}
+		setMask = sets - 1;
+	}
+
+	private Segment segmentFor(long hash) {
+		return segments[(int) (hash >>> 32) & (segments.length - 1)];
+	}
+
+	/**
+	 * @param hash the hash of a chromosome
+	 * @return the fitness value stored for the hash, or
+	 * 	FitnessFunction.NO_FITNESS_VALUE if there is none
+	 */
+	public double get(long hash) {
+		return segmentFor(hash).get(hash, (int) hash & setMask);
+	}
+
+	/**
+	 * Store a fitness value, evicting another if the slots for the hash are
+	 * 	full
+	 * @param hash the hash of a chromosome
+	 * @param fitness the chromosome's fitness value, which is not negative
+	 */
+	public void put(long hash, double fitness) {
+		segmentFor(hash).put(hash, (int) hash & setMask, fitness);
+	}
+
+	/**
+	 * Remove every entry, e.g. before solving another puzzle; the hit and
+	 * 	miss counts are kept
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * @return the number of lookups that found a fitness value
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment segment : segments) {
+			hits += segment.getHits();
+		}
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment segment : segments) {
+			misses += segment.getMisses();
+		}
+		return misses;
+	}
+
+	/**
+	 * One lock's worth of the cache: groups of WAYS slots, each group with
+	 * 	its own clock hand
+	 */
+	private static class Segment {
+		private final long[] keys;
+		/* Negative for an empty slot */
+		private final double[] values;
+		private final boolean[] referenced;
+		private final byte[] hands;
+		private long hits;
+		private long misses;
+
+		Segment(int sets) {
+			keys = new long[sets * WAYS];
+			values = new double[sets * WAYS];
+			referenced = new boolean[sets * WAYS];
+			hands = new byte[sets];
+			clear();
+		}
+
+		synchronized double get(long hash, int set) {
+			for (int i = set * WAYS; i < (set + 1) * WAYS; ++i) {
+				if (keys[i] == hash && values[i] >= 0) {
+					referenced[i] = true;
+					++hits;
+					return values[i];
+				}
+			}
+			++misses;
+			return -1;
+		}
+
+		synchronized void put(long hash, int set, double fitness) {
+			int base = set * WAYS;
+			for (int i = base; i < base + WAYS; ++i) {
+				if (values[i] < 0 || keys[i] == hash) {
+					store(i, hash, fitness);
+					return;
+				}
+			}
+			int hand = hands[set];
+			while (referenced[base + hand]) {
+				referenced[base + hand] = false;
+				hand = (hand + 1) % WAYS;
+			}
+			store(base + hand, hash, fitness);
+			hands[set] = (byte) ((hand + 1) % WAYS);
+		}
+
+		private void store(int slot, long hash, double fitness) {
+			keys[slot] = hash;
+			values[slot] = fitness;
+			referenced[slot] = false;
+		}
+
+		synchronized void clear() {
+			Arrays.fill(values, -1);
+			Arrays.fill(referenced, false);
+			Arrays.fill(hands, (byte) 0);
+		}
+
+		synchronized long getHits() {
+			return hits;
+		}
+
+		synchronized long getMisses() {
+			return misses;
+		}
+	}
+}
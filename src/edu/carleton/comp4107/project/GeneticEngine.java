@@ -0,0 +1,53 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgap.InvalidConfigurationException;
+
+/**
+ * Solves a puzzle with the genetic algorithm, using the settings given to
+ * SudokuSolver on the command line
+ */
+public class GeneticEngine implements SolverEngine {
+	private final ForkJoinPool pool;
+	private final int xoverType;
+	private final double mutationRate;
+	private final SudokuConfiguration conf;
+
+	/**
+	 * @param pool the pool to evaluate fitness on, or null
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 */
+	public GeneticEngine(ForkJoinPool pool, int xoverType, double mutationRate) {
+		this.pool = pool;
+		this.xoverType = xoverType;
+		this.mutationRate = mutationRate;
+		this.conf = null;
+	}
+
+	/**
+	 * Create an engine that evolves a single population with a fixed
+	 * 	configuration, reusing it for every puzzle it solves
+	 * @param conf the configuration
+	 */
+	public GeneticEngine(SudokuConfiguration conf) {
+		this.pool = null;
+		this.xoverType = 0;
+		this.mutationRate = 0;
+		this.conf = conf;
+	}
+
+	@Override
+	public TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop)
+			throws InvalidConfigurationException, InterruptedException {
+		if (conf != null) {
+			return SudokuSolver.evolve(t, layout, conf, random, stop);
+		}
+		return SudokuSolver.runTry(t, layout, pool, xoverType, mutationRate,
+				random, stop);
+	}
+}
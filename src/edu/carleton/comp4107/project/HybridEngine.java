@@ -0,0 +1,47 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgap.InvalidConfigurationException;
+
+/**
+ * Runs the genetic algorithm and, if it stalls, finishes the puzzle with the
+ * exact solver. The exact solver is seeded with the GA's best grid: for
+ * each cell it tries the GA's value before any other.
+ */
+public class HybridEngine implements SolverEngine {
+	private final SolverEngine ga;
+
+	/**
+	 * @param ga the engine to run first
+	 */
+	public HybridEngine(SolverEngine ga) {
+		this.ga = ga;
+	}
+
+	@Override
+	public TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop)
+			throws InvalidConfigurationException, InterruptedException {
+		TryResult result = ga.solve(t, layout, random, stop);
+		if (result.isSolved() || result.isCancelled()) {
+			return result;
+		}
+		long startTime = System.nanoTime();
+		int[][] grid = DancingLinks.solve(layout.getPuzzle(), result.getGrid(), stop);
+		long time = result.getTime() + System.nanoTime() - startTime;
+		ProgressReporter reporter = SudokuSolver.getReporter();
+		if (reporter.isReporting(ProgressReporter.PROGRESS)) {
+			reporter.report("Try " + t + "; GA stalled at " + result.getBestFit() +
+					"; finishing with exact solver");
+		}
+		if (grid == null) {
+			return new TryResult(result.getGrid(), result.getBestFit(), false,
+					stop.get(), result.getGeneration(), time);
+		}
+		stop.set(true);
+		return new TryResult(grid, layout.getSize() * layout.getSize() * 2, true,
+				false, result.getGeneration(), time);
+	}
+}
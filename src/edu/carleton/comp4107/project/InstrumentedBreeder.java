@@ -0,0 +1,144 @@
+package edu.carleton.comp4107.project;
+
+import java.util.List;
+
+import org.jgap.Configuration;
+import org.jgap.GeneticOperator;
+import org.jgap.IChromosome;
+import org.jgap.Population;
+import org.jgap.impl.GABreeder;
+
+/**
+ * JGAP's breeder, timing each phase of a generation: crossover, mutation,
+ * selection and fitness evaluation, and counting the chromosomes scored
+ * and how many of those scores came from the fitness cache. The counters
+ * describe the last generation bred and are cleared at the start of the
+ * next one; read them on the thread evolving the population, between
+ * generations.
+ *
+ * Genetic operators are applied as JGAP applies them, in the order they
+ * were added to the configuration, but without firing genetic events,
+ * which nothing here listens for.
+ */
+public class InstrumentedBreeder extends GABreeder {
+	private static final long serialVersionUID = 1L;
+	private long crossoverTime;
+	private long mutationTime;
+	private long selectionTime;
+	private long evaluationTime;
+	private int evaluations;
+	private long cacheHits;
+
+	@Override
+	public Population evolve(Population pop, Configuration conf) {
+		crossoverTime = 0;
+		mutationTime = 0;
+		selectionTime = 0;
+		evaluationTime = 0;
+		evaluations = 0;
+		cacheHits = 0;
+		return super.evolve(pop, conf);
+	}
+
+	@Override
+	protected Population applyNaturalSelectors(Configuration conf, Population pop,
+			boolean processBeforeGeneticOperators) {
+		long startTime = System.nanoTime();
+		Population selected = super.applyNaturalSelectors(conf, pop,
+				processBeforeGeneticOperators);
+		selectionTime += System.nanoTime() - startTime;
+		return selected;
+	}
+
+	@Override
+	protected void applyGeneticOperators(Configuration conf, Population pop) {
+		List<?> operators = conf.getGeneticOperators();
+		for (int i = 0; i < operators.size(); ++i) {
+			GeneticOperator operator = (GeneticOperator) operators.get(i);
+			long startTime = System.nanoTime();
+			operator.operate(pop, pop.getChromosomes());
+			long time = System.nanoTime() - startTime;
+			if (operator instanceof PermutationCrossover) {
+				crossoverTime += time;
+			} else {
+				mutationTime += time;
+			}
+		}
+	}
+
+	@Override
+	protected final void updateChromosomes(Population pop, Configuration conf) {
+		long startTime = System.nanoTime();
+		for (int i = 0; i < pop.size(); ++i) {
+			if (pop.getChromosome(i).getFitnessValueDirectly() < 0) ++evaluations;
+		}
+		FitnessCache cache = conf.getFitnessFunction() instanceof SudokuFitnessFunction
+				? ((SudokuFitnessFunction) conf.getFitnessFunction()).getCache() : null;
+		long hits = cache != null ? cache.getHits() : 0;
+		evaluate(pop, conf);
+		if (cache != null) cacheHits += cache.getHits() - hits;
+		evaluationTime += System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Score every chromosome of the population that has no fitness value
+	 * @param pop the population
+	 * @param conf the configuration
+	 */
+	protected void evaluate(Population pop, Configuration conf) {
+		super.updateChromosomes(pop, conf);
+	}
+
+	@Override
+	public Object clone() {
+		return new InstrumentedBreeder();
+	}
+
+	/**
+	 * @return the time spent on crossover in the last generation, in
+	 * 	nanoseconds
+	 */
+	public long getCrossoverTime() {
+		return crossoverTime;
+	}
+
+	/**
+	 * @return the time spent on mutation in the last generation, in
+	 * 	nanoseconds
+	 */
+	public long getMutationTime() {
+		return mutationTime;
+	}
+
+	/**
+	 * @return the time spent on selection in the last generation, in
+	 * 	nanoseconds
+	 */
+	public long getSelectionTime() {
+		return selectionTime;
+	}
+
+	/**
+	 * @return the time spent on fitness evaluation in the last generation,
+	 * 	in nanoseconds
+	 */
+	public long getEvaluationTime() {
+		return evaluationTime;
+	}
+
+	/**
+	 * @return the number of chromosomes scored in the last generation; those
+	 * 	whose fitness was kept up to date by mutation aren't counted
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * @return the number of the last generation's evaluations whose score
+	 * 	was found in the fitness cache
+	 */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+}
@@ -0,0 +1,230 @@
+package edu.carleton.comp4107.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgap.Configuration;
+import org.jgap.Genotype;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+import org.jgap.RandomGenerator;
+
+/**
+ * Evolves several sub-populations (islands) at once, each on its own
+ * thread. Every few generations each island sends copies of its best
+ * individuals to a neighbour, where they replace the worst individuals.
+ * All islands stop as soon as one of them solves the puzzle.
+ */
+public class IslandModel {
+	/** Island i sends migrants to island i+1 */
+	public static final int RING = 0;
+	/** Islands send migrants to a randomly chosen other island */
+	public static final int RANDOM = 1;
+	private final PuzzleLayout layout;
+	private final int numIslands;
+	private final int migrationInterval;
+	private final int numMigrants;
+	private final int topology;
+	private final int maxGen;
+	private final int stuckThreshold;
+	private final ForkJoinPool pool;
+	private final int maxFitness;
+	private final List<Queue<int[][]>> inboxes = new ArrayList<Queue<int[][]>>();
+	private final AtomicBoolean solved = new AtomicBoolean();
+	private AtomicBoolean stop;
+	/* The best grid found so far; chromosomes are recycled by their islands'
+	 * arenas, so none is kept */
+	private int[][] bestGrid;
+	private int bestFit = -1;
+	private int bestGen;
+
+	/**
+	 * @param layout the layout of the puzzle to solve
+	 * @param numIslands the number of islands
+	 * @param migrationInterval the number of generations between migrations
+	 * @param numMigrants the number of individuals each island sends
+	 * @param topology RING or RANDOM
+	 * @param maxGen the maximum number of generations per island
+	 * @param stuckThreshold the number of generations an island keeps
+	 * 	trying without improvement before giving up
+	 * @param pool the pool to evaluate fitness on, or null to evaluate on
+	 * 	each island's own thread
+	 */
+	public IslandModel(PuzzleLayout layout, int numIslands, int migrationInterval,
+			int numMigrants, int topology, int maxGen, int stuckThreshold,
+			ForkJoinPool pool) {
+		this.layout = layout;
+		this.numIslands = numIslands;
+		this.migrationInterval = migrationInterval;
+		this.numMigrants = numMigrants;
+		this.topology = topology;
+		this.maxGen = maxGen;
+		this.stuckThreshold = stuckThreshold;
+		this.pool = pool;
+		this.maxFitness = layout.getSize() * layout.getSize() * 2;
+		for (int i = 0; i < numIslands; ++i) {
+			inboxes.add(new ConcurrentLinkedQueue<int[][]>());
+		}
+	}
+
+	/**
+	 * Evolve all islands until one solves the puzzle, all of them give up or
+	 * 	the run is cancelled
+	 * @param t the try number, used for reporting
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @param random the source of the islands' random choices; each island
+	 * 	gets a generator split from it
+	 * @param stop set by any island that solves the puzzle; the islands stop
+	 * 	as soon as it is set, whoever sets it
+	 * @return the outcome, with the fittest individual over all islands
+	 * @throws InvalidConfigurationException
+	 * @throws InterruptedException
+	 */
+	public TryResult run(final int t, int xoverType, double mutationRate,
+			SplittableRandom random, AtomicBoolean stop)
+			throws InvalidConfigurationException, InterruptedException {
+		this.stop = stop;
+		List<Callable<Void>> islands = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < numIslands; ++i) {
+			final SudokuConfiguration conf = SudokuSolver.createConfiguration(
+					"try" + t + "-island" + i, layout.getPuzzle(), layout, pool,
+					xoverType, mutationRate);
+			conf.restart(random.split(), layout);
+			final int island = i;
+			islands.add(new Callable<Void>() {
+				@Override
+				public Void call() throws InvalidConfigurationException {
+					evolveIsland(t, island, conf);
+					return null;
+				}
+			});
+		}
+
+		long startTime = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(numIslands);
+		try {
+			for (Future<Void> future : executor.invokeAll(islands)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		long time = System.nanoTime() - startTime;
+		return new TryResult(bestGrid, bestFit, solved.get(),
+				!solved.get() && stop.get(), bestGen, time);
+	}
+
+	private void evolveIsland(int t, int island, Configuration conf)
+			throws InvalidConfigurationException {
+		ChromosomeArena arena = new ChromosomeArena(conf, layout);
+		Genotype population = new Genotype(conf,
+				SudokuSolver.generatePopulation(conf, layout, arena));
+		RandomGenerator rand = conf.getRandomGenerator();
+		DuplicateFilter filter = SudokuSolver.isRemovingDuplicates()
+				? new DuplicateFilter(conf, layout, arena) : null;
+		long startTime = System.nanoTime();
+		int stuckCount = 0;
+		int oldBestFit = 0;
+		for (int gen = 0; gen < maxGen && !stop.get(); ++gen) {
+			immigrate(arena, population.getPopulation(), inboxes.get(island));
+			IChromosome bestSolution = population.getFittestChromosome();
+			int bestFit = (int) bestSolution.getFitnessValue();
+			if (bestFit <= oldBestFit) {
+				if (++stuckCount >= stuckThreshold) {
+					break;
+				}
+			} else {
+				stuckCount = 0;
+				oldBestFit = bestFit;
+				report(t, island, gen, bestSolution);
+			}
+			if (bestFit == maxFitness) {
+				solved.set(true);
+				stop.set(true);
+				break;
+			}
+			if (gen > 0 && gen % migrationInterval == 0) {
+				emigrate(population.getPopulation(), island, rand);
+			}
+			int replaced = filter != null
+					? filter.replaceDuplicates(population.getPopulation()) : 0;
+			SudokuSolver.breed(population, arena, conf, gen, startTime, replaced);
+		}
+	}
+
+	/**
+	 * Record a new best individual of one island, printing it if it beats
+	 * 	every other island
+	 */
+	private synchronized void report(int t, int island, int gen, IChromosome chrom) {
+		int fit = (int) chrom.getFitnessValue();
+		if (fit <= bestFit) {
+			return;
+		}
+		bestGrid = SudokuUtils.formatPuzzle(chrom, layout.getPuzzle());
+		bestFit = fit;
+		bestGen = gen;
+		ProgressReporter reporter = SudokuSolver.getReporter();
+		if (reporter.isReporting(ProgressReporter.PROGRESS)) {
+			reporter.report("Try " + t + "; Island " + island + "; Generation " + gen +
+					"; Best solution " + fit + "/" + maxFitness, bestGrid);
+		}
+	}
+
+	/**
+	 * Send copies of the fittest individuals of an island to its neighbour
+	 */
+	private void emigrate(Population pop, int island, RandomGenerator rand) {
+		if (numIslands < 2) return;
+		int dest;
+		if (topology == RANDOM) {
+			dest = rand.nextInt(numIslands - 1);
+			if (dest >= island) ++dest;
+		} else {
+			dest = (island + 1) % numIslands;
+		}
+		Queue<int[][]> inbox = inboxes.get(dest);
+		for (Object chrom : pop.determineFittestChromosomes(numMigrants)) {
+			/* The rows are shared rather than copied; neither island will
+			 * write to them again */
+			inbox.add(((SudokuChromosome) chrom).shareRows());
+		}
+	}
+
+	/**
+	 * Replace the least fit individuals of an island with any migrants that
+	 * 	have arrived
+	 */
+	private void immigrate(ChromosomeArena arena, Population pop, Queue<int[][]> inbox)
+			throws InvalidConfigurationException {
+		int[][] rows;
+		while ((rows = inbox.poll()) != null) {
+			int worst = 0;
+			for (int i = 1; i < pop.size(); ++i) {
+				if (pop.getChromosome(i).getFitnessValue()
+						< pop.getChromosome(worst).getFitnessValue()) {
+					worst = i;
+				}
+			}
+			SudokuChromosome migrant = arena.obtain();
+			for (int i = 0; i < rows.length; ++i) {
+				migrant.setRow(i, rows[i], false);
+			}
+			pop.setChromosome(worst, migrant);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package edu.carleton.comp4107.project;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jgap.Population;
+
+/**
+ * Records statistics of every generation of every population and writes
+ * them out on a background thread, so that evolving never waits on the
+ * disk. The file is CSV, or JSON (an array of objects) if its name ends in
+ * .json, with one row per generation:
+ * 	population: the name of the population's configuration
+ * 	generation: the generation number
+ * 	elapsed_ms: the time since the population's first generation began
+ * 	generation_ns: the time the generation took
+ * 	evaluations: the number of chromosomes scored
+ * 	cache_hits: how many of those scores were found in the fitness cache
+ * 	best_fitness, mean_fitness: over the population bred
+ * 	diversity: the fraction of the population bred that is distinct
+ * 	entropy, distance_to_best: the population bred's mean relative entropy
+ * 		per blank cell and mean distance to its fittest individual; see
+ * 		PopulationDiversity
+ * 	duplicates_replaced: the number of individuals replaced before the
+ * 		generation for being identical to others
+ * 	crossover_ns, mutation_ns, selection_ns, evaluation_ns: the time spent
+ * 		in each phase of the generation
+ *
+ * Once closed, a summary of each population is printed: its generation and
+ * evaluation rates, the duplicates replaced and how its time was split
+ * between the phases.
+ */
+public class MetricsRecorder {
+	private static final String[] COLUMNS = {"population", "generation",
+		"elapsed_ms", "generation_ns", "evaluations", "cache_hits",
+		"best_fitness", "mean_fitness", "diversity", "entropy", "distance_to_best",
+		"duplicates_replaced", "crossover_ns", "mutation_ns", "selection_ns",
+		"evaluation_ns"};
+	private static final Row END = new Row();
+	private final String path;
+	private final boolean json;
+	private final PrintWriter out;
+	private final BlockingQueue<Row> queue = new LinkedBlockingQueue<Row>();
+	private final Thread writer;
+	/* Totals per population; only touched by the writer thread until it
+	 * has finished */
+	private final Map<String, Row> totals = new TreeMap<String, Row>();
+
+	/**
+	 * Start recording
+	 * @param path the file to write to; CSV unless the name ends in .json
+	 * @throws IOException if the file can't be created
+	 */
+	public MetricsRecorder(String path) throws IOException {
+		this.path = path;
+		this.json = path.toLowerCase(Locale.ROOT).endsWith(".json");
+		this.out = new PrintWriter(new BufferedWriter(new FileWriter(path)));
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "metrics-writer");
+		writer.start();
+	}
+
+	/**
+	 * Record a generation that has just been bred. Must be called on the
+	 * 	thread evolving the population, before the next generation.
+	 * @param population the name of the population
+	 * @param generation the generation number
+	 * @param elapsed the time since the population's first generation began,
+	 * 	in nanoseconds
+	 * @param generationTime the time the generation took in nanoseconds
+	 * @param breeder the breeder of the population, holding the times of
+	 * 	the generation's phases
+	 * @param pop the population bred
+	 * @param replaced the number of duplicates replaced before the
+	 * 	generation
+	 */
+	public void record(String population, int generation, long elapsed,
+			long generationTime, InstrumentedBreeder breeder, Population pop,
+			int replaced) {
+		Row row = new Row();
+		row.population = population;
+		row.generation = generation;
+		row.elapsed = elapsed;
+		row.generationTime = generationTime;
+		row.evaluations = breeder.getEvaluations();
+		row.cacheHits = breeder.getCacheHits();
+		row.crossoverTime = breeder.getCrossoverTime();
+		row.mutationTime = breeder.getMutationTime();
+		row.selectionTime = breeder.getSelectionTime();
+		row.evaluationTime = breeder.getEvaluationTime();
+		row.duplicatesReplaced = replaced;
+		double total = 0;
+		for (int i = 0; i < pop.size(); ++i) {
+			double fitness = pop.getChromosome(i).getFitnessValueDirectly();
+			row.bestFitness = Math.max(row.bestFitness, fitness);
+			total += fitness;
+		}
+		row.meanFitness = pop.size() > 0 ? total / pop.size() : 0;
+		row.diversity = pop.size() > 0 ? PopulationDiversity.distinct(pop) : 0;
+		row.entropy = PopulationDiversity.entropy(pop);
+		row.distanceToBest = PopulationDiversity.distanceToBest(pop);
+		queue.add(row);
+	}
+
+	/**
+	 * Wait for every recorded row to be written, close the file and print a
+	 * 	summary of each population
+	 * @throws IOException if the file couldn't be written
+	 * @throws InterruptedException
+	 */
+	public void close() throws IOException, InterruptedException {
+		queue.add(END);
+		writer.join();
+		out.close();
+		System.out.println("---------------------------");
+		System.out.println("Metrics written to " + path);
+		for (Row total : totals.values()) {
+			double seconds = total.generationTime / 1e9;
+			System.out.println(String.format(Locale.ROOT,
+					"%s: %d generations, %.1f generations/sec, %.0f evaluations/sec " +
+					"(%.0f%% from cache), %d duplicates replaced; crossover %.0f%%, " +
+					"mutation %.0f%%, selection %.0f%%, evaluation %.0f%%",
+					total.population, total.generation, total.generation / seconds,
+					total.evaluations / seconds,
+					percent(total.cacheHits, total.evaluations), total.duplicatesReplaced,
+					percent(total.crossoverTime, total.generationTime),
+					percent(total.mutationTime, total.generationTime),
+					percent(total.selectionTime, total.generationTime),
+					percent(total.evaluationTime, total.generationTime)));
+		}
+		if (out.checkError()) {
+			throw new IOException("Couldn't write metrics to " + path);
+		}
+	}
+
+	private static double percent(long part, long whole) {
+		return whole > 0 ? 100.0 * part / whole : 0;
+	}
+
+	/**
+	 * Write rows as they are recorded until the end marker is taken
+	 */
+	private void write() {
+		if (json) {
+			out.println("[");
+		} else {
+			out.println(String.join(",", COLUMNS));
+		}
+		boolean first = true;
+		try {
+			Row row;
+			while ((row = queue.take()) != END) {
+				if (json) {
+					if (!first) out.println(",");
+					out.print(toJson(row));
+				} else {
+					out.println(toCsv(row));
+				}
+				first = false;
+				add(row);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (json) {
+			if (!first) out.println();
+			out.println("]");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Add a row to the totals of its population; the totals' generation
+	 * 	field counts generations
+	 */
+	private void add(Row row) {
+		Row total = totals.get(row.population);
+		if (total == null) {
+			total = new Row();
+			total.population = row.population;
+			totals.put(row.population, total);
+		}
+		++total.generation;
+		total.generationTime += row.generationTime;
+		total.evaluations += row.evaluations;
+		total.cacheHits += row.cacheHits;
+		total.duplicatesReplaced += row.duplicatesReplaced;
+		total.crossoverTime += row.crossoverTime;
+		total.mutationTime += row.mutationTime;
+		total.selectionTime += row.selectionTime;
+		total.evaluationTime += row.evaluationTime;
+	}
+
+	private static String toCsv(Row row) {
+		return String.format(Locale.ROOT, "%s,%d,%.3f,%d,%d,%d,%.0f,%.3f,%.4f,%.4f,%.4f,%d,%d,%d,%d,%d",
+				row.population, row.generation, row.elapsed / 1e6, row.generationTime,
+				row.evaluations, row.cacheHits, row.bestFitness, row.meanFitness, row.diversity,
+				row.entropy, row.distanceToBest, row.duplicatesReplaced, row.crossoverTime, row.mutationTime, row.selectionTime,
+				row.evaluationTime);
+	}
+
+	private static String toJson(Row row) {
+		return String.format(Locale.ROOT, "{\"%s\": \"%s\", \"%s\": %d, \"%s\": %.3f, " +
+				"\"%s\": %d, \"%s\": %d, \"%s\": %d, \"%s\": %.0f, \"%s\": %.3f, " +
+				"\"%s\": %.4f, \"%s\": %.4f, \"%s\": %.4f, \"%s\": %d, " +
+				"\"%s\": %d, \"%s\": %d, \"%s\": %d, \"%s\": %d}",
+				COLUMNS[0], row.population, COLUMNS[1], row.generation,
+				COLUMNS[2], row.elapsed / 1e6, COLUMNS[3], row.generationTime,
+				COLUMNS[4], row.evaluations, COLUMNS[5], row.cacheHits,
+				COLUMNS[6], row.bestFitness, COLUMNS[7], row.meanFitness,
+				COLUMNS[8], row.diversity, COLUMNS[9], row.entropy,
+				COLUMNS[10], row.distanceToBest, COLUMNS[11], row.duplicatesReplaced,
+				COLUMNS[12], row.crossoverTime, COLUMNS[13], row.mutationTime,
+				COLUMNS[14], row.selectionTime, COLUMNS[15], row.evaluationTime);
+	}
+
+	/**
+	 * The statistics of one generation
+	 */
+	private static class Row {
+		String population;
+		int generation;
+		long elapsed;
+		long generationTime;
+		long evaluations;
+		long cacheHits;
+		double bestFitness;
+		double meanFitness;
+		double diversity;
+		double entropy;
+		double distanceToBest;
+		long duplicatesReplaced;
+		long crossoverTime;
+		long mutationTime;
+		long selectionTime;
+		long evaluationTime;
+	}
+}
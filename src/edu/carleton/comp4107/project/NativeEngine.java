@@ -0,0 +1,554 @@
+package edu.carleton.comp4107.project;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves a puzzle with the same genetic algorithm as the JGAP engine, bred
+ * without JGAP: every individual is an int array holding the values of
+ * the puzzle's blank cells in the order of PuzzleLayout, so a generation
+ * allocates nothing and makes no virtual calls beyond the random numbers
+ * the crossovers draw.
+ *
+ * A generation is bred as JGAP breeds it with SudokuSolver's
+ * configuration:
+ * 	crossover: popSize * crossoverRate times, two different members of the
+ * 		population are crossed row by row with PermutationCrossover's row
+ * 		crossovers, and both children are added to the pool
+ * 	mutation: every row of every member of the pool, parents included, has
+ * 		two random cells swapped with probability mutationRate, as
+ * 		SwapMutation does
+ * 	selection: half of the next generation is the fittest ELITE_RATE of
+ * 		that half's places taken in order from the pool, and the rest of
+ * 		the half the very fittest again, as the BestChromosomesSelector of
+ * 		JGAP's DefaultConfiguration picks them; the other half is picked by
+ * 		tournaments of tournamentSize members drawn from the pool, each won
+ * 		by its i-th fittest member with probability p(1-p)^i, the last
+ * 		member taking whatever is left
+ * Selected individuals are copied rather than shared, so mutating one
+ * never changes another. Rows left to mutate are found by drawing the gaps
+ * between them from the geometric distribution, rather than a number per
+ * row. Only rows that differ between the parents are crossed, a child
+ * that comes out the same as a parent takes its score, and a member is
+ * scored again only once a swap has changed it.
+ *
+ * Scores are the same as SudokuFitnessFunction's, counted from masks of the
+ * values in each column and box like PuzzleLayout's. Grids too big for the
+ * masks stamp each value of each column and box with the number of the
+ * evaluation instead, so that no working space has to be cleared between
+ * evaluations.
+ */
+public class NativeEngine implements SolverEngine {
+	/** The fraction of the fittest half of a generation taken from the
+	 * pool once each, as in JGAP's DefaultConfiguration */
+	public static final double ELITE_RATE = 0.9;
+	private final int popSize;
+	private final int maxGen;
+	private final int stuckThreshold;
+	private final int tournamentSize;
+	private final double tournamentProb;
+	private final double crossoverRate;
+	private final int crossoverType;
+	private final double mutationRate;
+
+	/**
+	 * @param popSize the population size
+	 * @param maxGen the most generations to breed
+	 * @param stuckThreshold the number of generations to keep trying
+	 * 	without improvement in the best fitness before giving up
+	 * @param tournamentSize the number of individuals in each tournament
+	 * @param tournamentProb the probability of the fittest in a tournament
+	 * 	winning it
+	 * @param crossoverRate the fraction of the population crossed over
+	 * 	each generation
+	 * @param crossoverType PermutationCrossover.ORDER_ONE, PMX or CYCLE
+	 * @param mutationRate the probability of swapping two cells of each row
+	 */
+	public NativeEngine(int popSize, int maxGen, int stuckThreshold,
+			int tournamentSize, double tournamentProb, double crossoverRate,
+			int crossoverType, double mutationRate) {
+		this.popSize = popSize;
+		this.maxGen = maxGen;
+		this.stuckThreshold = stuckThreshold;
+		this.tournamentSize = tournamentSize;
+		this.tournamentProb = tournamentProb;
+		this.crossoverRate = crossoverRate;
+		this.crossoverType = crossoverType;
+		this.mutationRate = mutationRate;
+	}
+
+	@Override
+	public TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop) {
+		long startTime = System.nanoTime();
+		long startBytes = SudokuUtils.getAllocatedBytes();
+		int size = layout.getSize();
+		int maxFitness = size * size * 2;
+		Breeder breeder = new Breeder(layout, random);
+		int gen;
+		int best = 0;
+		int stuckCount = 0;
+		int oldBestFit = 0;
+		ProgressReporter reporter = SudokuSolver.getReporter();
+		for (gen = 0; gen < maxGen; ++gen) {
+			best = breeder.getFittest();
+			if (stop.get()) {
+				break;
+			}
+			int bestFit = breeder.fitness[best];
+			if (bestFit <= oldBestFit) {
+				if (++stuckCount >= stuckThreshold) {
+					break;
+				}
+			} else {
+				if (reporter.isReporting(ProgressReporter.PROGRESS)) {
+					reporter.report("Try " + t + "; Generation " + gen +
+							"; Best solution " + bestFit + "/" + maxFitness +
+							"; Stuck for " + stuckCount + " generations",
+							reporter.isReporting(ProgressReporter.GRIDS)
+							? toGrid(layout, breeder.population[best]) : null);
+				}
+				stuckCount = 0;
+				oldBestFit = bestFit;
+			}
+			if (bestFit == maxFitness) {
+				stop.set(true);
+				break;
+			}
+			breeder.breed();
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = SudokuUtils.getAllocatedBytes();
+		long bytesPerGen = startBytes < 0 || gen == 0 ? -1 : (bytes - startBytes) / gen;
+		int bestFit = breeder.fitness[best];
+		boolean solved = bestFit == maxFitness;
+		return new TryResult(toGrid(layout, breeder.population[best]), bestFit,
+				solved, !solved && stop.get(), gen, time, bytesPerGen,
+				(long) (gen + 1) * popSize);
+	}
+
+	/**
+	 * @return the puzzle with its blank cells filled in from an individual
+	 */
+	private static int[][] toGrid(PuzzleLayout layout, int[] genes) {
+		int[][] grid = new int[layout.getSize()][];
+		int[][] puzzle = layout.getPuzzle();
+		for (int i = 0; i < grid.length; ++i) {
+			grid[i] = puzzle[i].clone();
+		}
+		for (int index = 0; index < genes.length; ++index) {
+			grid[layout.getBlankRow(index)][layout.getBlankColumn(index)] = genes[index];
+		}
+		return grid;
+	}
+
+	/**
+	 * The population of one attempt, with the pool it is bred in and all the
+	 * working space breeding needs
+	 */
+	private final class Breeder {
+		private final SplittableRandom random;
+		/* The crossovers take JGAP's interface, drawing from the same source */
+		private final SplittableRandomGenerator rand;
+		private final int numBlanks;
+		private final int numCrossovers;
+		/* The population in its first popSize places, followed by the
+		 * children of the generation being bred */
+		int[][] population;
+		int[] fitness;
+		/* Where the next generation is selected into */
+		private int[][] selected;
+		private int[] selectedFitness;
+		/* Whether each member of the pool has changed since it was last
+		 * scored */
+		private final boolean[] unscored;
+		private final int[] rowOffsets;
+		private final int[] rowLengths;
+		/* The rows with more than one blank cell */
+		private final int[] movable;
+		/* The keys of the column and box of each blank cell. For grids
+		 * small enough for long bitmasks, these are the places of the
+		 * column's and box's masks: c and size+b. Otherwise a value v in
+		 * column c has key c*(size+1) + v, and in box b (size+b)*(size+1) + v */
+		private final int[] columnKeys;
+		private final int[] boxKeys;
+		/* The masks of the values the puzzle gives each column, then each
+		 * box, and the working space they're copied into to be filled in;
+		 * null if the grid is too big for them */
+		private final long[] givenMasks;
+		private final long[] masks;
+		/* The number of the last evaluation each key was seen in, or
+		 * Integer.MAX_VALUE for the values the puzzle gives; null if the
+		 * masks are used */
+		private final int[] stamps;
+		private int givenScore;
+		private int pass;
+		/* The pool's places in order of fitness, and the working space
+		 * sorting them by counting */
+		private final int[] order;
+		private final int[] counts;
+		private final int[] tournament;
+		private final int[] mark1;
+		private final int[] mark2;
+
+		Breeder(PuzzleLayout layout, SplittableRandom random) {
+			this.random = random;
+			this.rand = new SplittableRandomGenerator(random);
+			int size = layout.getSize();
+			numBlanks = layout.getNumBlanks();
+			numCrossovers = popSize > 1 ? (int) (popSize * crossoverRate) : 0;
+			int poolSize = popSize + 2 * numCrossovers;
+			population = new int[poolSize][numBlanks];
+			fitness = new int[poolSize];
+			selected = new int[poolSize][numBlanks];
+			selectedFitness = new int[poolSize];
+			unscored = new boolean[poolSize];
+			rowOffsets = new int[size];
+			rowLengths = new int[size];
+			int numMovable = 0;
+			int[] rows = new int[size];
+			for (int row = 0; row < size; ++row) {
+				rowOffsets[row] = layout.getRowOffset(row);
+				rowLengths[row] = layout.getRowLength(row);
+				if (rowLengths[row] > 1) rows[numMovable++] = row;
+			}
+			movable = Arrays.copyOf(rows, numMovable);
+
+			columnKeys = new int[numBlanks];
+			boxKeys = new int[numBlanks];
+			if (layout.hasMasks()) {
+				givenMasks = new long[2 * size];
+				masks = new long[2 * size];
+				stamps = null;
+				for (int i = 0; i < size; ++i) {
+					givenMasks[i] = layout.getGivenColumnMask(i);
+					givenMasks[size + i] = layout.getGivenBoxMask(i);
+				}
+				for (int index = 0; index < numBlanks; ++index) {
+					columnKeys[index] = layout.getBlankColumn(index);
+					boxKeys[index] = size + layout.getBlankBox(index);
+				}
+			} else {
+				givenMasks = null;
+				masks = null;
+				stamps = new int[2 * size * (size + 1)];
+				for (int index = 0; index < numBlanks; ++index) {
+					columnKeys[index] = layout.getBlankColumn(index) * (size + 1);
+					boxKeys[index] = (size + layout.getBlankBox(index)) * (size + 1);
+				}
+				int[][] puzzle = layout.getPuzzle();
+				for (int row = 0; row < size; ++row) {
+					for (int col = 0; col < size; ++col) {
+						int value = puzzle[row][col];
+						if (value == SudokuUtils.BLANK) continue;
+						stamp(col * (size + 1) + value);
+						stamp((size + layout.getBox(row, col)) * (size + 1) + value);
+					}
+				}
+			}
+			order = new int[poolSize];
+			counts = new int[size * size * 2 + 1];
+			tournament = new int[Math.max(tournamentSize, 1)];
+			mark1 = new int[size + 1];
+			mark2 = new int[size + 1];
+
+			int[] missing = layout.getMissingValues();
+			for (int i = 0; i < popSize; ++i) {
+				int[] genes = population[i];
+				System.arraycopy(missing, 0, genes, 0, numBlanks);
+				for (int row = 0; row < size; ++row) {
+					shuffle(genes, rowOffsets[row], rowLengths[row]);
+				}
+				fitness[i] = score(genes);
+			}
+		}
+
+		/**
+		 * @return the place of the fittest member of the population, the
+		 * 	first if there are several
+		 */
+		int getFittest() {
+			int best = 0;
+			for (int i = 1; i < popSize; ++i) {
+				if (fitness[i] > fitness[best]) best = i;
+			}
+			return best;
+		}
+
+		/**
+		 * Replace the population with the next generation
+		 */
+		void breed() {
+			int poolSize = population.length;
+			for (int c = 0; c < numCrossovers; ++c) {
+				int index1, index2;
+				do {
+					index1 = random.nextInt(popSize);
+					index2 = random.nextInt(popSize);
+				} while (index1 == index2);
+				crossover(index1, index2, popSize + 2 * c);
+			}
+			mutate();
+			for (int i = 0; i < poolSize; ++i) {
+				if (unscored[i]) {
+					fitness[i] = score(population[i]);
+					unscored[i] = false;
+				}
+			}
+			select();
+			int[][] pool = population;
+			population = selected;
+			selected = pool;
+			int[] poolFitness = fitness;
+			fitness = selectedFitness;
+			selectedFitness = poolFitness;
+		}
+
+		/**
+		 * Cross two members of the population row by row into two places of
+		 * 	the pool. The children start as copies of the parents, and only
+		 * 	the rows that differ between the parents are crossed, since
+		 * 	crossing a row with itself gives the same row back. A child that
+		 * 	comes out the same as a parent takes that parent's score; the
+		 * 	other children are left to be scored.
+		 * @param index1 the place of the first parent
+		 * @param index2 the place of the second parent
+		 * @param child the place of the first child; the second follows it
+		 */
+		private void crossover(int index1, int index2, int child) {
+			int[] parent1 = population[index1];
+			int[] parent2 = population[index2];
+			int[] child1 = population[child];
+			int[] child2 = population[child + 1];
+			System.arraycopy(parent1, 0, child1, 0, numBlanks);
+			System.arraycopy(parent2, 0, child2, 0, numBlanks);
+			/* Whether each child is so far the same as each parent */
+			boolean same11 = true, same12 = true, same21 = true, same22 = true;
+			for (int row = 0; row < movable.length; ++row) {
+				int offset = rowOffsets[movable[row]];
+				int end = offset + rowLengths[movable[row]];
+				if (sameRow(parent1, parent2, offset, end)) continue;
+				switch (crossoverType) {
+				case PermutationCrossover.ORDER_ONE:
+					PermutationCrossover.doOrderOneCrossover(parent1, parent2, child1, child2,
+							offset, end - offset, rand, mark1, mark2);
+					break;
+				case PermutationCrossover.PMX:
+					PermutationCrossover.doPartiallyMappedCrossover(parent1, parent2, child1,
+							child2, offset, end - offset, rand, mark1, mark2);
+					break;
+				case PermutationCrossover.CYCLE:
+					PermutationCrossover.doCycleCrossover(parent1, parent2, child1, child2,
+							offset, end - offset, rand, mark1, mark2);
+					break;
+				}
+				/* The parents differ in this row, so a child can only be the
+				 * same as one of them */
+				same11 = same11 && sameRow(child1, parent1, offset, end);
+				same12 = same12 && !same11 && sameRow(child1, parent2, offset, end);
+				same21 = same21 && sameRow(child2, parent1, offset, end);
+				same22 = same22 && !same21 && sameRow(child2, parent2, offset, end);
+			}
+			inherit(child, same11, same12, index1, index2);
+			inherit(child + 1, same21, same22, index1, index2);
+		}
+
+		/**
+		 * Give a child the score of the parent it is the same as, if any
+		 */
+		private void inherit(int child, boolean same1, boolean same2, int index1,
+				int index2) {
+			unscored[child] = !same1 && !same2;
+			if (same1) {
+				fitness[child] = fitness[index1];
+			} else if (same2) {
+				fitness[child] = fitness[index2];
+			}
+		}
+
+		/**
+		 * Swap two random cells in each movable row of each member of the
+		 * 	pool with probability mutationRate, skipping from one row to
+		 * 	mutate to the next by a geometrically distributed gap
+		 */
+		private void mutate() {
+			if (mutationRate <= 0 || movable.length == 0) return;
+			double logKeep = Math.log(1 - mutationRate);
+			int i = 0;
+			long r = skip(logKeep);
+			while (true) {
+				if (r >= movable.length) {
+					long skipped = r / movable.length;
+					if (skipped >= population.length - i) return;
+					i += (int) skipped;
+					r -= skipped * movable.length;
+				}
+				int row = movable[(int) r];
+				int offset = rowOffsets[row];
+				int a = offset + random.nextInt(rowLengths[row]);
+				int b = offset + random.nextInt(rowLengths[row]);
+				int[] genes = population[i];
+				int tmp = genes[a];
+				genes[a] = genes[b];
+				genes[b] = tmp;
+				unscored[i] |= a != b;
+				r += 1 + skip(logKeep);
+			}
+		}
+
+		/**
+		 * @param logKeep the log of the probability of leaving a row alone
+		 * @return the number of rows to leave alone before the next one
+		 * 	mutated, up to Integer.MAX_VALUE
+		 */
+		private long skip(double logKeep) {
+			if (logKeep == Double.NEGATIVE_INFINITY) return 0;
+			return (long) Math.min(Math.log(1 - random.nextDouble()) / logKeep,
+					Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Select the next generation from the pool into selected
+		 */
+		private void select() {
+			int poolSize = population.length;
+			/* Sort the pool by fitness, fittest first, by counting */
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < poolSize; ++i) {
+				++counts[counts.length - 1 - fitness[i]];
+			}
+			int start = 0;
+			for (int f = 0; f < counts.length; ++f) {
+				int count = counts[f];
+				counts[f] = start;
+				start += count;
+			}
+			for (int i = 0; i < poolSize; ++i) {
+				order[counts[counts.length - 1 - fitness[i]]++] = i;
+			}
+
+			int half = popSize / 2;
+			int elite = Math.max((int) Math.round(Math.min(half, poolSize) * ELITE_RATE), 1);
+			int place = 0;
+			for (; place < half; ++place) {
+				copy(order[place < elite ? place : place - elite], place);
+			}
+			for (; place < popSize; ++place) {
+				copy(tournament(), place);
+			}
+		}
+
+		/**
+		 * @return the place in the pool of the winner of a tournament
+		 */
+		private int tournament() {
+			int poolSize = population.length;
+			/* Draw the members and sort them, fittest first */
+			for (int i = 0; i < tournament.length; ++i) {
+				int member = random.nextInt(poolSize);
+				int j = i;
+				for (; j > 0 && fitness[tournament[j - 1]] < fitness[member]; --j) {
+					tournament[j] = tournament[j - 1];
+				}
+				tournament[j] = member;
+			}
+			double draw = random.nextDouble();
+			double chance = tournamentProb;
+			int winner = 0;
+			while (winner < tournament.length - 1 && draw >= chance) {
+				draw -= chance;
+				chance *= 1 - tournamentProb;
+				++winner;
+			}
+			return tournament[winner];
+		}
+
+		/**
+		 * Copy a member of the pool to a place in the next generation
+		 */
+		private void copy(int from, int to) {
+			System.arraycopy(population[from], 0, selected[to], 0, numBlanks);
+			selectedFitness[to] = fitness[from];
+		}
+
+		/**
+		 * @return the score of an individual, as SudokuFitnessFunction would
+		 * 	give it
+		 */
+		private int score(int[] genes) {
+			if (masks == null) {
+				return countByStamps(genes);
+			}
+			System.arraycopy(givenMasks, 0, masks, 0, masks.length);
+			for (int index = 0; index < numBlanks; ++index) {
+				long bit = 1L << (genes[index] - 1);
+				masks[columnKeys[index]] |= bit;
+				masks[boxKeys[index]] |= bit;
+			}
+			int score = 0;
+			for (int i = 0; i < masks.length; ++i) {
+				score += Long.bitCount(masks[i]);
+			}
+			return score;
+		}
+
+		/**
+		 * @return the score of an individual, counting each value of each
+		 * 	column and box the first time it is stamped in this evaluation
+		 */
+		private int countByStamps(int[] genes) {
+			if (++pass == Integer.MAX_VALUE) {
+				for (int i = 0; i < stamps.length; ++i) {
+					if (stamps[i] != Integer.MAX_VALUE) stamps[i] = 0;
+				}
+				pass = 1;
+			}
+			int score = givenScore;
+			for (int index = 0; index < numBlanks; ++index) {
+				int column = columnKeys[index] + genes[index];
+				if (stamps[column] < pass) {
+					stamps[column] = pass;
+					++score;
+				}
+				int box = boxKeys[index] + genes[index];
+				if (stamps[box] < pass) {
+					stamps[box] = pass;
+					++score;
+				}
+			}
+			return score;
+		}
+
+		/**
+		 * Mark a value of a column or box as given by the puzzle
+		 */
+		private void stamp(int key) {
+			if (stamps[key] == 0) ++givenScore;
+			stamps[key] = Integer.MAX_VALUE;
+		}
+
+		/**
+		 * @return whether two individuals have the same values from one
+		 * 	index up to another; rows are too short for Arrays.equals to pay
+		 */
+		private boolean sameRow(int[] genes1, int[] genes2, int from, int to) {
+			for (int i = from; i < to; ++i) {
+				if (genes1[i] != genes2[i]) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Randomly permute part of an array
+		 */
+		private void shuffle(int[] values, int offset, int length) {
+			for (int i = length - 1; i > 0; --i) {
+				int j = random.nextInt(i + 1);
+				int tmp = values[offset + i];
+				values[offset + i] = values[offset + j];
+				values[offset + j] = tmp;
+			}
+		}
+	}
+}
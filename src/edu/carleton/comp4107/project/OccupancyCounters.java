@@ -0,0 +1,197 @@
+package edu.carleton.comp4107.project;
+
+/**
+ * Counts how many times each value occurs in each column and box of a
+ * filled-in puzzle. The score (the number of distinct values summed over
+ * all columns and boxes) is the same quantity SudokuFitnessFunction
+ * computes, but can be kept up to date in constant time as cells within a
+ * row are swapped.
+ *
+ * Each count takes one byte, read as unsigned, so that the counters of a
+ * 36x36 grid fit in under 3KB and copying them is cheap; no count can
+ * exceed the grid size, and grids are at most 255 wide.
+ */
+public class OccupancyCounters {
+	private final PuzzleLayout layout;
+	/* Column counts for value v of column c at c*size + v-1, followed by
+	 * box counts laid out the same way */
+	private final byte[] counts;
+	private int score;
+	/* The number of chromosomes sharing these counters */
+	private int users = 1;
+
+	/**
+	 * Count the values of a filled-in puzzle
+	 * @param layout the layout of the puzzle
+	 * @param rows the values of the blank cells of each row
+	 */
+	public OccupancyCounters(PuzzleLayout layout, int[][] rows) {
+		this.layout = layout;
+		int size = layout.getSize();
+		this.counts = new byte[2 * size * size];
+		count(rows);
+	}
+
+	private OccupancyCounters(OccupancyCounters other) {
+		this.layout = other.layout;
+		this.counts = other.counts.clone();
+		this.score = other.score;
+	}
+
+	/**
+	 * Start from the counts of the pre-filled cells, then add the blank
+	 * 	cells
+	 */
+	private void count(int[][] rows) {
+		System.arraycopy(layout.getGivenCounts(), 0, counts, 0, counts.length);
+		score = layout.getGivenScore();
+		int index = 0;
+		for (int i = 0; i < rows.length; ++i) {
+			int[] row = rows[i];
+			for (int j = 0; j < row.length; ++j, ++index) {
+				add(columnSlot(layout.getBlankColumn(index), row[j]));
+				add(boxSlot(layout.getBlankBox(index), row[j]));
+			}
+		}
+	}
+
+	/**
+	 * Recount these counters for another filled-in version of the same
+	 * 	puzzle, reusing their storage
+	 * @param rows the values of the blank cells of each row
+	 * @return these counters
+	 */
+	public OccupancyCounters recount(int[][] rows) {
+		users = 1;
+		count(rows);
+		return this;
+	}
+
+	/**
+	 * Make these counters a copy of others for the same puzzle, reusing
+	 * 	their storage
+	 * @param other the counters to copy
+	 * @return these counters
+	 */
+	public OccupancyCounters copyFrom(OccupancyCounters other) {
+		System.arraycopy(other.counts, 0, counts, 0, counts.length);
+		score = other.score;
+		users = 1;
+		return this;
+	}
+
+	/**
+	 * @return the number of distinct values summed over all columns and
+	 * 	boxes
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * @param col the column number
+	 * @param value the value
+	 * @return the number of times the value occurs in the column
+	 */
+	public int getColumnCount(int col, int value) {
+		return counts[columnSlot(col, value)] & 0xFF;
+	}
+
+	/**
+	 * @param box the box number
+	 * @param value the value
+	 * @return the number of times the value occurs in the box
+	 */
+	public int getBoxCount(int box, int value) {
+		return counts[boxSlot(box, value)] & 0xFF;
+	}
+
+	/**
+	 * Update the counts for swapping two blank cells of the same row
+	 * @param i the index of the first blank cell
+	 * @param j the index of the second blank cell
+	 * @param a the value of the first blank cell before the swap
+	 * @param b the value of the second blank cell before the swap
+	 */
+	public void swap(int i, int j, int a, int b) {
+		if (a == b) return;
+		int col1 = layout.getBlankColumn(i);
+		int col2 = layout.getBlankColumn(j);
+		if (col1 != col2) {
+			move(columnSlot(col1, a), columnSlot(col1, b));
+			move(columnSlot(col2, b), columnSlot(col2, a));
+		}
+		int box1 = layout.getBlankBox(i);
+		int box2 = layout.getBlankBox(j);
+		if (box1 != box2) {
+			move(boxSlot(box1, a), boxSlot(box1, b));
+			move(boxSlot(box2, b), boxSlot(box2, a));
+		}
+	}
+
+	/**
+	 * Update the counts for changing the values of a row's blank cells
+	 * @param offset the index of the row's first blank cell
+	 * @param from the values of the row's blank cells before the change
+	 * @param to the values of the row's blank cells after the change
+	 */
+	public void replaceRow(int offset, int[] from, int[] to) {
+		for (int i = 0; i < from.length; ++i) {
+			int a = from[i];
+			int b = to[i];
+			if (a == b) continue;
+			int col = layout.getBlankColumn(offset + i);
+			int box = layout.getBlankBox(offset + i);
+			move(columnSlot(col, a), columnSlot(col, b));
+			move(boxSlot(box, a), boxSlot(box, b));
+		}
+	}
+
+	/**
+	 * @return an independent copy of these counters
+	 */
+	public OccupancyCounters copy() {
+		return new OccupancyCounters(this);
+	}
+
+	/**
+	 * Record that one more chromosome shares these counters
+	 */
+	void addUser() {
+		++users;
+	}
+
+	/**
+	 * Record that a chromosome no longer uses these counters
+	 * @return the number of chromosomes still sharing them
+	 */
+	int removeUser() {
+		return --users;
+	}
+
+	/**
+	 * @return whether more than one chromosome shares these counters, so
+	 * 	they must be copied before being changed
+	 */
+	boolean isShared() {
+		return users > 1;
+	}
+
+	private int columnSlot(int col, int value) {
+		return col * layout.getSize() + value - 1;
+	}
+
+	private int boxSlot(int box, int value) {
+		int size = layout.getSize();
+		return size * size + box * size + value - 1;
+	}
+
+	private void move(int from, int to) {
+		if (--counts[from] == 0) --score;
+		add(to);
+	}
+
+	private void add(int slot) {
+		if (counts[slot]++ == 0) ++score;
+	}
+}
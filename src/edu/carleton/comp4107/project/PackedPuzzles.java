@@ -0,0 +1,216 @@
+package edu.carleton.comp4107.project;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file of puzzles of one size packed one byte per cell, which is
+ * memory-mapped rather than read, so any puzzle in it can be loaded
+ * directly by its number. The file holds, in big-endian order:
+ * 	the 4 bytes MAGIC
+ * 	the grid size, as an int
+ * 	the number of puzzles, as an int
+ * 	each puzzle's cells row by row, one unsigned byte each, 0 for blank
+ *
+ * A packed file can be read by any number of threads at once.
+ */
+public class PackedPuzzles {
+	/** The first bytes of every packed file */
+	public static final byte[] MAGIC = {'S', 'D', 'K', 'P'};
+	private static final int HEADER_SIZE = MAGIC.length + 8;
+	private final ByteBuffer data;
+	private final int size;
+	private final int count;
+
+	private PackedPuzzles(ByteBuffer data, int size, int count) {
+		this.data = data;
+		this.size = size;
+		this.count = count;
+	}
+
+	/**
+	 * Map a packed file
+	 * @param filename the file
+	 * @return the puzzles in the file
+	 * @throws IOException if the file can't be read or is not a complete
+	 * 	packed file
+	 */
+	public static PackedPuzzles open(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Packed file too large to map: " + filename);
+			}
+			if (!hasMagic(channel)) {
+				throw new IOException(SudokuSolver.DATA_ERR + "Not a packed puzzle file");
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			int size = data.getInt(MAGIC.length);
+			int count = data.getInt(MAGIC.length + 4);
+			int root = (int) Math.round(Math.sqrt(size));
+			if (size <= 0 || size > 255 || root * root != size) {
+				throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.SIZE_ERR);
+			}
+			if (count < 0 || HEADER_SIZE + (long) count * size * size != length) {
+				throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.NUM_ROWS_ERR);
+			}
+			return new PackedPuzzles(data, size, count);
+		} finally {
+			/* The mapping stays valid once the file is closed */
+			file.close();
+		}
+	}
+
+	/**
+	 * @param file any file
+	 * @return whether the file starts with MAGIC
+	 * @throws IOException if the file can't be read
+	 */
+	public static boolean isPacked(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return hasMagic(raf.getChannel());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static boolean hasMagic(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+		while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+		}
+		return !magic.hasRemaining() && magic.flip().equals(ByteBuffer.wrap(MAGIC));
+	}
+
+	/**
+	 * @return the number of rows (and columns) of every puzzle
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of puzzles
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param index the number of a puzzle, from 0
+	 * @return the puzzle, with BLANK for blank cells
+	 */
+	public int[][] get(int index) {
+		/* Row by row, as a multi-dimensional allocation is much slower */
+		int[][] puzzle = new int[size][];
+		for (int i = 0; i < size; ++i) {
+			puzzle[i] = new int[size];
+		}
+		return get(index, puzzle);
+	}
+
+	/**
+	 * Load a puzzle into existing rows, so that puzzles can be scanned
+	 * 	without allocating
+	 * @param index the number of a puzzle, from 0
+	 * @param puzzle size rows of size cells each, to be overwritten
+	 * @return puzzle, holding the puzzle with BLANK for blank cells
+	 */
+	public int[][] get(int index, int[][] puzzle) {
+		int p = HEADER_SIZE + index * size * size;
+		for (int i = 0; i < size; ++i) {
+			int[] row = puzzle[i];
+			for (int j = 0; j < size; ++j) {
+				row[j] = data.get(p++) & 0xFF;
+			}
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Writes puzzles to a new packed file one at a time
+	 */
+	public static class Writer implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		private int size;
+		private int count;
+
+		/**
+		 * @param filename the file to write, replacing any existing file
+		 * @throws IOException if the file can't be created
+		 */
+		public Writer(String filename) throws IOException {
+			file = new RandomAccessFile(filename, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+			buf.put(MAGIC).putInt(0).putInt(0);
+		}
+
+		/**
+		 * @param puzzle a puzzle the same size as every other puzzle written
+		 * @throws IOException if the puzzle is a different size from the
+		 * 	first, or the file can't be written
+		 */
+		public void add(int[][] puzzle) throws IOException {
+			if (count == 0) {
+				size = puzzle.length;
+				if (size > 255) {
+					throw new IOException("Grids larger than 255x255 can't be packed");
+				}
+			} else if (puzzle.length != size) {
+				throw new IOException(SudokuSolver.DATA_ERR + "Puzzle " + (count + 1) +
+						" is " + puzzle.length + "x" + puzzle.length + ", not " +
+						size + "x" + size);
+			}
+			for (int[] row : puzzle) {
+				for (int value : row) {
+					if (!buf.hasRemaining()) flush();
+					buf.put((byte) value);
+				}
+			}
+			++count;
+		}
+
+		/**
+		 * @return the number of puzzles written
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Write out the remaining puzzles and the header, and close the file;
+		 * 	does nothing if it is already closed
+		 * @throws IOException if the file can't be written
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!channel.isOpen()) return;
+			try {
+				flush();
+				buf.putInt(size).putInt(count);
+				buf.flip();
+				channel.write(buf, MAGIC.length);
+			} finally {
+				file.close();
+			}
+		}
+
+		private void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+	}
+}
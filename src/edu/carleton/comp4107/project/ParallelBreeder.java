@@ -0,0 +1,92 @@
+package edu.carleton.comp4107.project;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jgap.Configuration;
+import org.jgap.FitnessFunction;
+import org.jgap.IChromosome;
+import org.jgap.Population;
+
+/**
+ * A breeder that scores the whole population on a fork-join pool before
+ * selection instead of one chromosome at a time. The fitness function must
+ * be safe to call from several threads at once.
+ *
+ * Evaluation consumes no random numbers and each chromosome is scored by
+ * exactly one thread, so a run produces the same results whatever the
+ * number of threads.
+ */
+public class ParallelBreeder extends InstrumentedBreeder {
+	private static final long serialVersionUID = 1L;
+	/** The number of chromosomes below which a task is not split further */
+	private static final int THRESHOLD = 16;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param pool the pool to evaluate chromosomes on
+	 */
+	public ParallelBreeder(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	protected void evaluate(Population pop, Configuration conf) {
+		/* Selection may put the same chromosome in the population several
+		 * times; score each one only once */
+		Map<IChromosome, Boolean> seen = new IdentityHashMap<IChromosome, Boolean>();
+		List<IChromosome> pending = new ArrayList<IChromosome>();
+		for (IChromosome chrom : pop.getChromosomes()) {
+			if (chrom.getFitnessValueDirectly() < 0
+					&& seen.put(chrom, Boolean.TRUE) == null) {
+				pending.add(chrom);
+			}
+		}
+		if (!pending.isEmpty()) {
+			pool.invoke(new EvaluateTask(conf.getFitnessFunction(), pending,
+					0, pending.size()));
+		}
+	}
+
+	@Override
+	public Object clone() {
+		return new ParallelBreeder(pool);
+	}
+
+	/**
+	 * Scores chromosomes [from, to) of a list, splitting the range in half
+	 * until it is small enough
+	 */
+	private static class EvaluateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FitnessFunction fitness;
+		private final List<IChromosome> chroms;
+		private final int from;
+		private final int to;
+
+		EvaluateTask(FitnessFunction fitness, List<IChromosome> chroms, int from, int to) {
+			this.fitness = fitness;
+			this.chroms = chroms;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; ++i) {
+					IChromosome chrom = chroms.get(i);
+					chrom.setFitnessValueDirectly(fitness.getFitnessValue(chrom));
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new EvaluateTask(fitness, chroms, from, mid),
+						new EvaluateTask(fitness, chroms, mid, to));
+			}
+		}
+	}
+}
@@ -3,7 +3,6 @@ package edu.carleton.comp4107.project;
 import java.util.*;
 
 import org.jgap.*;
-import org.jgap.impl.CompositeGene;
 import org.jgap.impl.CrossoverOperator;
 
 public class PermutationCrossover extends CrossoverOperator 
@@ -13,6 +12,14 @@ public class PermutationCrossover extends CrossoverOperator
 	public static final int CYCLE = 2;
 	private final double crossoverRate;
 	private final int crossoverType;
+	/* Working space for the row crossovers, indexed by cell value. An
+	 * operator only ever runs on the thread evolving its population. */
+	private int[] scratch1 = new int[0];
+	private int[] scratch2 = new int[0];
+	/* Where each child row is built before it is known whether it matches
+	 * a parent's */
+	private int[] child1 = new int[0];
+	private int[] child2 = new int[0];
 	
 	public PermutationCrossover(final Configuration config, double crossoverRate, int crossoverType) throws InvalidConfigurationException {
 		super(config);
@@ -23,7 +30,7 @@ public class PermutationCrossover extends CrossoverOperator
 	@Override
 	public void operate(Population pop, List candidates) {
 		int numCrossovers = (int)(pop.size()*crossoverRate);
-		Random rand = new Random();
+		RandomGenerator rand = getConfiguration().getRandomGenerator();
 		for (int i = 0; i < numCrossovers; ++i) {
 			int index1, index2;
 			IChromosome chrom1, chrom2;
@@ -37,209 +44,246 @@ public class PermutationCrossover extends CrossoverOperator
 			} while (chrom1 == chrom2/* || chrom1.getAge() < 1 || 
 					chrom2.getAge() < 1*/);
 			
-			IChromosome parent1 = (IChromosome) chrom1.clone();
-			IChromosome parent2 = (IChromosome) chrom2.clone();
-
 			try {
-				doCrossover(parent1, parent2, candidates, rand);
-				//doSimpleCrossover(parent1, parent2, candidates, rand);
+				doCrossover((SudokuChromosome) chrom1, (SudokuChromosome) chrom2,
+						candidates, rand);
 			} catch(InvalidConfigurationException e) {} // NOPE
 		}
 	}
 	
 	/**
 	 * Perform a crossover between two chromosomes by performing a crossover between each
-	 * corresponding pair of genes.
-	 * @param chrom1
-	 * @param chrom2
+	 * corresponding pair of rows. The parents are left untouched, and any
+	 * child row that comes out the same as a parent's row shares its array.
+	 * @param parent1
+	 * @param parent2
 	 * @param candidates
 	 * @param rand
 	 */
-	private void doCrossover(IChromosome chrom1, IChromosome chrom2, List candidates, Random rand)
+	private void doCrossover(SudokuChromosome parent1, SudokuChromosome parent2, List candidates, RandomGenerator rand)
 			throws InvalidConfigurationException {
-		//for each composite gene, crossover the sub-genes
-		CompositeGene[] genes1 = new CompositeGene[chrom1.size()];
-		CompositeGene[] genes2 = new CompositeGene[chrom2.size()];
-		for (int i = 0; i < chrom1.size(); ++i) {
-			CompositeGene compGene1 = (CompositeGene)chrom1.getGene(i);
-			CompositeGene compGene2 = (CompositeGene)chrom2.getGene(i);
-			
-			List<Gene> par1 = compGene1.getGenes();
-			List<Gene> par2 = compGene2.getGenes();
-			List<Gene> child1 = new ArrayList<Gene>(par1.size());
-			List<Gene> child2 = new ArrayList<Gene>(par2.size());
-			for (int j = 0; j < par1.size(); ++j) {
-				child1.add(null);
-				child2.add(null);
+		PuzzleLayout layout = parent1.getLayout();
+		int size = layout.getSize();
+		SudokuChromosome offspring1 = parent1.newSibling();
+		SudokuChromosome offspring2 = parent1.newSibling();
+		if (scratch1.length <= size) {
+			scratch1 = new int[size + 1];
+			scratch2 = new int[size + 1];
+			child1 = new int[size];
+			child2 = new int[size];
+		}
+		//for each row, crossover the blank cells
+		for (int i = 0; i < size; ++i) {
+			int[] par1 = parent1.getRow(i);
+			int[] par2 = parent2.getRow(i);
+			int numGenes = par1.length;
+			/* Crossing a row with itself gives the same row back */
+			if (numGenes < 2 || Arrays.equals(par1, par2)) {
+				offspring1.shareRowOf(i, parent1);
+				offspring2.shareRowOf(i, parent2);
+				continue;
 			}
-			//Gene[] child1 = new Gene[par1.size()];
-			//Gene[] child2 = new Gene[par2.size()];
 			
 			switch(crossoverType) {
 			case ORDER_ONE:
-				doOrderOneCrossover(par1, par2, child1, child2, rand);
+				doOrderOneCrossover(par1, par2, child1, child2, 0, numGenes, rand,
+						scratch1, scratch2);
 				break;
 			case PMX:
-				doPartiallyMappedCrossover(par1, par2, child1, child2, rand);
+				doPartiallyMappedCrossover(par1, par2, child1, child2, 0, numGenes, rand,
+						scratch1, scratch2);
 				break;
 			case CYCLE:
-				doCycleCrossover(par1, par2, child1, child2, rand);
+				doCycleCrossover(par1, par2, child1, child2, 0, numGenes, rand,
+						scratch1, scratch2);
 				break;
 			}
+			adoptRow(child1, offspring1, parent1, parent2, i);
+			adoptRow(child2, offspring2, parent1, parent2, i);
+		}
+		/* Each child keeps most of one parent's values, so its counters
+		 * are cheaper to derive from that parent's than to count afresh */
+		offspring1.deriveOccupancy(parent1);
+		offspring2.deriveOccupancy(parent2);
+		candidates.add(offspring1);
+		candidates.add(offspring2);
+	}
 
-			genes1[i] = new CompositeGene(chrom1.getConfiguration());
-			genes2[i] = new CompositeGene(chrom1.getConfiguration());
-			for(Gene gene: child1) genes1[i].addGene(gene);
-			for(Gene gene: child2) genes2[i].addGene(gene);
-
+	/**
+	 * Set a child's row: to a parent's array if the row came out the same as
+	 * 	that parent's, otherwise to a new copy
+	 * @param values the child's row, at the start of a working array
+	 * @param child the child
+	 * @param parent1
+	 * @param parent2
+	 * @param row the row number
+	 */
+	private static void adoptRow(int[] values, SudokuChromosome child,
+			SudokuChromosome parent1, SudokuChromosome parent2, int row) {
+		int[] par1 = parent1.getRow(row);
+		if (Arrays.equals(values, 0, par1.length, par1, 0, par1.length)) {
+			child.shareRowOf(row, parent1);
+			return;
+		}
+		int[] par2 = parent2.getRow(row);
+		if (Arrays.equals(values, 0, par2.length, par2, 0, par2.length)) {
+			child.shareRowOf(row, parent2);
+			return;
 		}
-		chrom1.setGenes(genes1);
-		chrom2.setGenes(genes2);
-		candidates.add(chrom1);
-		candidates.add(chrom2);
+		int[] copy = child.newRow(row);
+		System.arraycopy(values, 0, copy, 0, copy.length);
+		child.setRow(row, copy, true);
 	}
 	
-    /**
-     * Perform a basic crossover by randomly selecting which parent to take each gene (row) from
-     * @param chrom1
-     * @param chrom2
-     * @param candidates
-     * @param rand
-     * @throws InvalidConfigurationException
-     */
-    private void doSimpleCrossover(IChromosome chrom1, IChromosome chrom2, List candidates, Random rand)
-                       throws InvalidConfigurationException {
-               CompositeGene[] genes1 = new CompositeGene[chrom1.size()];
-               CompositeGene[] genes2 = new CompositeGene[chrom2.size()];
-               for (int i = 0; i < chrom1.size(); ++i) {
-                       if (rand.nextBoolean()) {
-                               genes1[i] = (CompositeGene) chrom1.getGene(i);
-                               genes2[i] = (CompositeGene) chrom2.getGene(i);
-                       } else {
-                               genes1[i] = (CompositeGene) chrom2.getGene(i);
-                               genes2[i] = (CompositeGene) chrom1.getGene(i);
-                       }
-               }
-               chrom1.setGenes(genes1);
-               chrom2.setGenes(genes2);
-               candidates.add(chrom1);
-               candidates.add(chrom2);
-       }
-
-
 	/**
-	 * Perform an Order One Crossover between two chromosomes
-	 * @param par1 the genes of the first parent
-	 * @param par2 the genes of the second parent
-	 * @param child1 the genes for the first child
-	 * @param child2 the genes for the second child
+	 * Perform an Order One Crossover between one row of two chromosomes
+	 * @param par1 the cells of the first parent
+	 * @param par2 the cells of the second parent
+	 * @param child1 the cells for the first child
+	 * @param child2 the cells for the second child
+	 * @param offset the index of the first cell of the row
+	 * @param numGenes the number of cells in the row
 	 * @param rand a random number generator
+	 * @param mark1 working space indexed by cell value; all zero on entry
+	 * 	and left all zero
+	 * @param mark2 working space like mark1
 	 */
-	private void doOrderOneCrossover(List<Gene> par1, List<Gene> par2, List<Gene> child1, List<Gene> child2, Random rand) {
-		int numGenes = par1.size();
-		
-		List<Gene> used1 = new ArrayList<Gene>();
-		List<Gene> used2 = new ArrayList<Gene>();
+	static void doOrderOneCrossover(int[] par1, int[] par2, int[] child1, int[] child2,
+			int offset, int numGenes, RandomGenerator rand, int[] mark1, int[] mark2) {
 		int start = rand.nextInt(numGenes-1);
 		int end = start + rand.nextInt(numGenes - start) + 1;
-		for (int i = start; i < end; ++i) {
-			child1.set(i, par2.get(i));
-			child2.set(i, par1.get(i));
-			used1.add(par2.get(i));
-			used2.add(par1.get(i));
+		for (int i = offset+start; i < offset+end; ++i) {
+			child1[i] = par2[i];
+			child2[i] = par1[i];
+			mark1[par1[i]] = 1;
+			mark2[par2[i]] = 1;
 		}
-		int j = end, k = end;
+		/* Fill the rest of each child, starting after the segment and
+		 * wrapping around, with the other parent's values in the same order */
+		int j = end % numGenes, k = j;
+		int index = j;
 		for (int i = 0; i < numGenes; ++i) {
-			int index = (i+end)%numGenes;
-			if (!used1.contains(par1.get(index))) {
-				child1.set(j%numGenes, par1.get(index));
-				++j;
+			if (mark2[par1[offset+index]] == 0) {
+				child1[offset+j] = par1[offset+index];
+				if (++j == numGenes) j = 0;
 			}
-			if (!used2.contains(par2.get(index))) {
-				child2.set(k%numGenes, par2.get(index));
-				++k;
+			if (mark1[par2[offset+index]] == 0) {
+				child2[offset+k] = par2[offset+index];
+				if (++k == numGenes) k = 0;
 			}
+			if (++index == numGenes) index = 0;
 		}
+		clearMarks(par1, par2, offset+start, offset+end, mark1, mark2);
 	}
 	
 	/**
-	 * Perform a Partially Mapped Crossover between two chromosomes
-	 * @param par1 the genes of the first parent
-	 * @param par2 the genes of the second parent
-	 * @param child1 the genes for the first child
-	 * @param child2 the genes for the second child
+	 * Perform a Partially Mapped Crossover between one row of two chromosomes
+	 * @param par1 the cells of the first parent
+	 * @param par2 the cells of the second parent
+	 * @param child1 the cells for the first child
+	 * @param child2 the cells for the second child
+	 * @param offset the index of the first cell of the row
+	 * @param numGenes the number of cells in the row
 	 * @param rand a random number generator
+	 * @param mark1 working space indexed by cell value; all zero on entry
+	 * 	and left all zero
+	 * @param mark2 working space like mark1
 	 */
-	private void doPartiallyMappedCrossover(List<Gene> par1, List<Gene> par2, List<Gene> child1, List<Gene> child2, Random rand) {
-		//TODO update for CompositeGene
-		int numGenes = par1.size();
-		
-		List<Gene> used1 = new ArrayList<Gene>();
-		List<Gene> used2 = new ArrayList<Gene>();
-		List<Gene> need1 = new ArrayList<Gene>();
-		List<Gene> need2 = new ArrayList<Gene>();
-		
+	static void doPartiallyMappedCrossover(int[] par1, int[] par2, int[] child1, int[] child2,
+			int offset, int numGenes, RandomGenerator rand, int[] mark1, int[] mark2) {
 		int start = rand.nextInt(numGenes-1);
 		int end = start + rand.nextInt(numGenes - start) + 1;
 
-		for (int i = start; i < end; ++i) {
-			child1.set(i, par1.get(i));
-			child2.set(i, par2.get(i));
-			used1.add(par1.get(i));
-			used2.add(par2.get(i));
-		}
-		for (int i = start; i < end; ++i) {
-			if (!used1.contains(par2.get(i))) {
-				need1.add(par2.get(i));
-			}
-			if (!used2.contains(par1.get(i))) {
-				need2.add(par1.get(i));
-			}
+		for (int i = offset+start; i < offset+end; ++i) {
+			child1[i] = par1[i];
+			child2[i] = par2[i];
+			mark1[par1[i]] = 1;
+			mark2[par2[i]] = 1;
 		}
+		/* Outside the segment each child takes the other parent's values,
+		 * except that a value already in its segment is replaced by the next
+		 * value of the other parent's segment missing from its own. Those
+		 * replacements are found by walking the segments once. */
+		int next1 = offset+start, next2 = offset+start;
+		int i = offset + end % numGenes;
 		for (int j = 0; j < numGenes - (end - start); ++j) {
-			int i = (j+end)%numGenes;
-			if (used1.contains(par2.get(i))) {
-				child1.set(i, need1.get(0));
-				need1.remove(0);
+			if (mark1[par2[i]] != 0) {
+				while (mark1[par2[next1]] != 0) ++next1;
+				child1[i] = par2[next1++];
 			} else {
-				child1.set(i, par2.get(i));
+				child1[i] = par2[i];
 			}
 
-			if (used2.contains(par1.get(i))) {
-				child2.set(i, need2.get(0));
-				need2.remove(0);
+			if (mark2[par1[i]] != 0) {
+				while (mark2[par1[next2]] != 0) ++next2;
+				child2[i] = par1[next2++];
 			} else {
-				child2.set(i, par1.get(i));
+				child2[i] = par1[i];
 			}
-			
+			if (++i == offset+numGenes) i = offset;
 		}
+		clearMarks(par1, par2, offset+start, offset+end, mark1, mark2);
 	}
 	
-	private void doCycleCrossover(List<Gene> par1, List<Gene> par2, List<Gene> child1, List<Gene> child2, Random rand) {
+	/**
+	 * Perform a Cycle Crossover between one row of two chromosomes
+	 * @param par1 the cells of the first parent
+	 * @param par2 the cells of the second parent
+	 * @param child1 the cells for the first child
+	 * @param child2 the cells for the second child
+	 * @param offset the index of the first cell of the row
+	 * @param numGenes the number of cells in the row
+	 * @param rand a random number generator
+	 * @param position working space indexed by cell value; all zero on
+	 * 	entry and left all zero
+	 * @param done working space like position
+	 */
+	static void doCycleCrossover(int[] par1, int[] par2, int[] child1, int[] child2,
+			int offset, int numGenes, RandomGenerator rand, int[] position, int[] done) {
+		/* The inverse of the first parent's row, so each step of a cycle is
+		 * a lookup rather than a search */
+		for (int i = 0; i < numGenes; ++i) {
+			position[par1[offset+i]] = i;
+		}
 		int start = 0;
 		int count = 0;
 		boolean flip = false;
 		while (true) {
 			int i = start;
-			while ((!child1.contains(par1.get(i)) && !flip) || (!child2.contains(par1.get(i)) && flip)) {
+			while (done[i] == 0) {
+				done[i] = 1;
 				if (flip) {
-					child2.set(i, par1.get(i));
-					child1.set(i, par2.get(i));
+					child2[offset+i] = par1[offset+i];
+					child1[offset+i] = par2[offset+i];
 				} else {
-					child1.set(i, par1.get(i));
-					child2.set(i, par2.get(i));
+					child1[offset+i] = par1[offset+i];
+					child2[offset+i] = par2[offset+i];
 				}
 				++count;
-				i = par1.indexOf(par2.get(i));
+				i = position[par2[offset+i]];
 			}
-			if (count >= par1.size()) {
+			if (count >= numGenes) {
 				break;
 			}
-			while (child1.contains(par1.get(start))) {
+			while (done[start] != 0) {
 				++start;
 			}
 			flip = !flip;
 		}
+		for (int i = 0; i < numGenes; ++i) {
+			position[par1[offset+i]] = 0;
+			done[i] = 0;
+		}
 	}
 
+	/**
+	 * Reset the marks set for the values of both parents' segments
+	 */
+	private static void clearMarks(int[] par1, int[] par2, int from, int to,
+			int[] mark1, int[] mark2) {
+		for (int i = from; i < to; ++i) {
+			mark1[par1[i]] = 0;
+			mark2[par2[i]] = 0;
+		}
+	}
 }
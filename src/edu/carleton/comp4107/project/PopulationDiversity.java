@@ -0,0 +1,116 @@
+package edu.carleton.comp4107.project;
+
+import java.util.Arrays;
+
+import org.jgap.Population;
+
+/**
+ * Measures of how varied a population of SudokuChromosomes is, all between
+ * 0 (every individual the same) and 1:
+ * 	distinct: the fraction of individuals that are distinct, going by
+ * 		their hashes
+ * 	entropy: the Shannon entropy of the values each blank cell takes across
+ * 		the population, relative to the most the cell could have, averaged
+ * 		over the blank cells
+ * 	distance to best: the fraction of blank cells in which an individual
+ * 		differs from the fittest one, averaged over the population
+ */
+public class PopulationDiversity {
+	private PopulationDiversity() {
+	}
+
+	/**
+	 * @param pop the population
+	 * @return the fraction of the population with distinct hashes
+	 */
+	public static double distinct(Population pop) {
+		int size = pop.size();
+		if (size == 0) return 1;
+		long[] hashes = new long[size];
+		for (int i = 0; i < size; ++i) {
+			hashes[i] = ((SudokuChromosome) pop.getChromosome(i)).getHash();
+		}
+		Arrays.sort(hashes);
+		int count = 1;
+		for (int i = 1; i < size; ++i) {
+			if (hashes[i] != hashes[i - 1]) ++count;
+		}
+		return (double) count / size;
+	}
+
+	/**
+	 * @param pop the population
+	 * @return the mean relative entropy of the values of the blank cells
+	 */
+	public static double entropy(Population pop) {
+		int popSize = pop.size();
+		if (popSize == 0) return 1;
+		PuzzleLayout layout = ((SudokuChromosome) pop.getChromosome(0)).getLayout();
+		int size = layout.getSize();
+		/* The number of individuals giving blank cell k the value v, at
+		 * k*size + v-1 */
+		int[] counts = new int[layout.getNumBlanks() * size];
+		for (int i = 0; i < popSize; ++i) {
+			SudokuChromosome chrom = (SudokuChromosome) pop.getChromosome(i);
+			int index = 0;
+			for (int row = 0; row < size; ++row) {
+				int[] values = chrom.getRow(row);
+				for (int j = 0; j < values.length; ++j, ++index) {
+					++counts[index * size + values[j] - 1];
+				}
+			}
+		}
+		double total = 0;
+		int cells = 0;
+		for (int index = 0; index < layout.getNumBlanks(); ++index) {
+			int choices = Math.min(layout.getRowLength(layout.getBlankRow(index)), popSize);
+			if (choices < 2) continue;
+			double entropy = 0;
+			for (int v = 0; v < size; ++v) {
+				int count = counts[index * size + v];
+				if (count > 0) {
+					double p = (double) count / popSize;
+					entropy -= p * Math.log(p);
+				}
+			}
+			total += entropy / Math.log(choices);
+			++cells;
+		}
+		return cells > 0 ? total / cells : 0;
+	}
+
+	/**
+	 * @param pop the population
+	 * @return the mean fraction of blank cells in which an individual
+	 * 	differs from the fittest one
+	 */
+	public static double distanceToBest(Population pop) {
+		int popSize = pop.size();
+		if (popSize == 0) return 0;
+		SudokuChromosome best = null;
+		for (int i = 0; i < popSize; ++i) {
+			SudokuChromosome chrom = (SudokuChromosome) pop.getChromosome(i);
+			if (best == null
+					|| chrom.getFitnessValueDirectly() > best.getFitnessValueDirectly()) {
+				best = chrom;
+			}
+		}
+		PuzzleLayout layout = best.getLayout();
+		if (layout.getNumBlanks() == 0) return 0;
+		long different = 0;
+		for (int i = 0; i < popSize; ++i) {
+			SudokuChromosome chrom = (SudokuChromosome) pop.getChromosome(i);
+			for (int row = 0; row < layout.getSize(); ++row) {
+				int[] values = chrom.getRow(row);
+				int[] bestValues = best.getRow(row);
+				/* Rows are shared between relatives, so identical rows are
+				 * often the same array */
+				if (values == bestValues) continue;
+				for (int j = 0; j < values.length; ++j) {
+					if (values[j] != bestValues[j]) ++different;
+				}
+			}
+		}
+		return (double) different / ((long) popSize * layout.getNumBlanks());
+	}
+}
@@ -0,0 +1,141 @@
+package edu.carleton.comp4107.project;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints the progress of attempts on a background thread, so that the
+ * threads evolving populations never wait on the console. Reports are
+ * queued without blocking; if the queue is full because the console can't
+ * keep up, the report is dropped and counted instead. Each report, with
+ * the grid of its new best solution if it has one, is formatted into a
+ * single string and printed at once, so reports from different attempts
+ * never interleave.
+ *
+ * The printing thread is started with the first report, and stopped by
+ * close, which also waits for every queued report to be printed.
+ */
+public class ProgressReporter {
+	/** Print nothing */
+	public static final int QUIET = 0;
+	/** Print a line for every improvement of each attempt */
+	public static final int PROGRESS = 1;
+	/** Print the grid of every new best solution as well */
+	public static final int GRIDS = 2;
+	private static final int CAPACITY = 256;
+	private static final Report END = new Report(null, null);
+	private final BlockingQueue<Report> queue = new ArrayBlockingQueue<Report>(CAPACITY);
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile int level;
+	private Thread printer;
+
+	/**
+	 * @param level QUIET, PROGRESS or GRIDS
+	 */
+	public ProgressReporter(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * @param level QUIET, PROGRESS or GRIDS
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * @param level PROGRESS or GRIDS
+	 * @return whether reports of that level are printed, so that callers
+	 * 	needn't build reports that won't be
+	 */
+	public boolean isReporting(int level) {
+		return this.level >= level;
+	}
+
+	/**
+	 * Queue a line of progress to be printed, without waiting
+	 * @param message the line
+	 */
+	public void report(String message) {
+		report(message, null);
+	}
+
+	/**
+	 * Queue a line of progress and a new best solution to be printed,
+	 * 	without waiting
+	 * @param message the line
+	 * @param grid the new best solution, which must not be changed
+	 * 	afterwards, or null; it is only printed at level GRIDS
+	 */
+	public void report(String message, int[][] grid) {
+		if (level < PROGRESS) return;
+		start();
+		if (!queue.offer(new Report(message, level >= GRIDS ? grid : null))) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Wait for every queued report to be printed and stop the printing
+	 * 	thread; it is started again by the next report
+	 * @return the number of reports dropped since the reporter was made
+	 * @throws InterruptedException
+	 */
+	public long close() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			thread = printer;
+			printer = null;
+		}
+		if (thread != null) {
+			queue.put(END);
+			thread.join();
+		}
+		return dropped.get();
+	}
+
+	private synchronized void start() {
+		if (printer != null) return;
+		printer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				print();
+			}
+		}, "progress-reporter");
+		printer.setDaemon(true);
+		printer.start();
+	}
+
+	/**
+	 * Print reports as they are queued, until the end marker is taken
+	 */
+	private void print() {
+		StringBuilder text = new StringBuilder();
+		try {
+			Report report;
+			while ((report = queue.take()) != END) {
+				text.setLength(0);
+				text.append(report.message).append(System.lineSeparator());
+				if (report.grid != null) {
+					text.append("new best: ").append(System.lineSeparator());
+					SudokuUtils.appendPuzzle(text, report.grid);
+				}
+				System.out.print(text);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.flush();
+	}
+
+	private static class Report {
+		final String message;
+		final int[][] grid;
+
+		Report(String message, int[][] grid) {
+			this.message = message;
+			this.grid = grid;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package edu.carleton.comp4107.project;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Precomputed geometry of a puzzle shared by every chromosome solving it.
+ * The blank cells of the puzzle are numbered in row-major order, so the
+ * blank cells of row i have indices [getRowOffset(i), getRowOffset(i+1)).
+ * A chromosome stores the values of each row's blank cells in a separate
+ * array; the blank cell with index k is at position getBlankPosition(k) of
+ * row getBlankRow(k).
+ *
+ * Each possible value of each blank cell also has a random 64-bit key, so
+ * that a filled grid can be hashed by XORing the keys of its values (Zobrist
+ * hashing) and the hash updated in constant time when two values move.
+ */
+public class PuzzleLayout {
+	private final int[][] puzzle;
+	private final int size;
+	private final int boxSize;
+	private final int[] rowOffsets;
+	private final int[] blankRows;
+	private final int[] blankCols;
+	private final int[] blankBoxes;
+	private final int[] cellIndex;
+	private final int[] missing;
+	/* For each column/box: the mask of its pre-filled values; only
+	 * computed for grids small enough for long bitmasks */
+	private final long[] givenColMasks;
+	private final long[] givenBoxMasks;
+	/* The key of value v in blank cell k is at k * size + v - 1 */
+	private final long[] keys;
+	/* How many times each value is pre-filled in each column and box, laid
+	 * out as OccupancyCounters lays out its counts, and the number of
+	 * non-zero counts */
+	private final byte[] givenCounts;
+	private final int givenScore;
+
+	/**
+	 * @param puzzle the puzzle as loaded by SudokuUtils.loadPuzzle
+	 */
+	public PuzzleLayout(int[][] puzzle) {
+		this.puzzle = puzzle;
+		this.size = puzzle.length;
+		this.boxSize = (int)Math.round(Math.sqrt(size));
+		this.rowOffsets = new int[size + 1];
+		this.cellIndex = new int[size * size];
+
+		int numBlanks = 0;
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (puzzle[i][j] == SudokuUtils.BLANK) ++numBlanks;
+			}
+		}
+		this.blankRows = new int[numBlanks];
+		this.blankCols = new int[numBlanks];
+		this.blankBoxes = new int[numBlanks];
+		this.missing = new int[numBlanks];
+
+		int k = 0;
+		for (int i = 0; i < size; ++i) {
+			rowOffsets[i] = k;
+			boolean[] seen = new boolean[size];
+			for (int j = 0; j < size; ++j) {
+				int num = puzzle[i][j];
+				if (num == SudokuUtils.BLANK) {
+					cellIndex[i * size + j] = k;
+					blankRows[k] = i;
+					blankBoxes[k] = getBox(i, j);
+					blankCols[k++] = j;
+				} else {
+					cellIndex[i * size + j] = -1;
+					seen[num - 1] = true;
+				}
+			}
+			int m = rowOffsets[i];
+			for (int j = 0; j < size; ++j) {
+				if (!seen[j]) missing[m++] = j + 1;
+			}
+		}
+		rowOffsets[size] = k;
+
+		this.givenCounts = new byte[2 * size * size];
+		int score = 0;
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				int num = puzzle[i][j];
+				if (num == SudokuUtils.BLANK) continue;
+				if (givenCounts[j * size + num - 1]++ == 0) ++score;
+				if (givenCounts[(size + getBox(i, j)) * size + num - 1]++ == 0) ++score;
+			}
+		}
+		this.givenScore = score;
+
+		/* A fixed seed, so that hashes don't depend on the run's seed */
+		SplittableRandom random = new SplittableRandom(0x5D0C0L);
+		this.keys = new long[numBlanks * size];
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = random.nextLong();
+		}
+
+		if (size > SudokuFitnessFunction.MAX_BITMASK_SIZE) {
+			givenColMasks = null;
+			givenBoxMasks = null;
+			return;
+		}
+		givenColMasks = new long[size];
+		givenBoxMasks = new long[size];
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (puzzle[i][j] != SudokuUtils.BLANK) {
+					long bit = 1L << (puzzle[i][j] - 1);
+					givenColMasks[j] |= bit;
+					givenBoxMasks[getBox(i, j)] |= bit;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the original puzzle, with BLANK for unfilled cells
+	 */
+	public int[][] getPuzzle() {
+		return puzzle;
+	}
+
+	/**
+	 * @return the number of rows (and columns) in the puzzle
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of rows (and columns) in one box
+	 */
+	public int getBoxSize() {
+		return boxSize;
+	}
+
+	/**
+	 * @return the total number of blank cells in the puzzle
+	 */
+	public int getNumBlanks() {
+		return blankCols.length;
+	}
+
+	/**
+	 * @param row the row number
+	 * @return the index of the first blank cell of the row
+	 */
+	public int getRowOffset(int row) {
+		return rowOffsets[row];
+	}
+
+	/**
+	 * @param row the row number
+	 * @return the number of blank cells in the row
+	 */
+	public int getRowLength(int row) {
+		return rowOffsets[row + 1] - rowOffsets[row];
+	}
+
+	/**
+	 * @param index the index of a blank cell
+	 * @return the row the blank cell is in
+	 */
+	public int getBlankRow(int index) {
+		return blankRows[index];
+	}
+
+	/**
+	 * @param index the index of a blank cell
+	 * @return the position of the blank cell among the blank cells of its
+	 * 	row
+	 */
+	public int getBlankPosition(int index) {
+		return index - rowOffsets[blankRows[index]];
+	}
+
+	/**
+	 * @param index the index of a blank cell
+	 * @return the column the blank cell is in
+	 */
+	public int getBlankColumn(int index) {
+		return blankCols[index];
+	}
+
+	/**
+	 * @param index the index of a blank cell
+	 * @return the box the blank cell is in
+	 */
+	public int getBlankBox(int index) {
+		return blankBoxes[index];
+	}
+
+	/**
+	 * @param row the row number
+	 * @param col the column number
+	 * @return the box number of the cell (numbered left to right then top
+	 * 	to bottom)
+	 */
+	public int getBox(int row, int col) {
+		return (row / boxSize) * boxSize + col / boxSize;
+	}
+
+	/**
+	 * @param row the row number
+	 * @param col the column number
+	 * @return the index of the blank cell at (row, col), or -1 if the cell
+	 * 	is pre-filled
+	 */
+	public int getCellIndex(int row, int col) {
+		return cellIndex[row * size + col];
+	}
+
+	/**
+	 * @return a new array holding, for each row in order, the values missing
+	 * 	from that row in ascending order
+	 */
+	public int[] getMissingValues() {
+		return missing.clone();
+	}
+
+	/**
+	 * @param row the row number
+	 * @return a new array holding the values missing from the row in
+	 * 	ascending order
+	 */
+	public int[] getMissingValues(int row) {
+		return Arrays.copyOfRange(missing, rowOffsets[row], rowOffsets[row + 1]);
+	}
+
+	/**
+	 * @return whether the per-column and per-box bitmasks are available;
+	 * 	they are for grids up to SudokuFitnessFunction.MAX_BITMASK_SIZE
+	 */
+	public boolean hasMasks() {
+		return givenColMasks != null;
+	}
+
+	/**
+	 * @param col the column number
+	 * @return the mask of the pre-filled values of the column, with bit v-1
+	 * 	set for value v
+	 */
+	public long getGivenColumnMask(int col) {
+		return givenColMasks[col];
+	}
+
+	/**
+	 * @param box the box number
+	 * @return the mask of the pre-filled values of the box
+	 */
+	public long getGivenBoxMask(int box) {
+		return givenBoxMasks[box];
+	}
+
+	/**
+	 * @return the number of times each value is pre-filled in each column
+	 * 	and box, laid out as OccupancyCounters lays out its counts. The
+	 * 	array is shared and must not be modified.
+	 */
+	byte[] getGivenCounts() {
+		return givenCounts;
+	}
+
+	/**
+	 * @return the number of distinct pre-filled values summed over all
+	 * 	columns and boxes
+	 */
+	public int getGivenScore() {
+		return givenScore;
+	}
+
+	/**
+	 * @param index the index of a blank cell
+	 * @param value a value of the cell
+	 * @return the random key of the value in the cell
+	 */
+	public long getKey(int index, int value) {
+		return keys[index * size + value - 1];
+	}
+
+	/**
+	 * @param row the row number
+	 * @param values the values of the blank cells of the row
+	 * @return the XOR of the keys of the values in the row's blank cells
+	 */
+	public long hashRow(int row, int[] values) {
+		long hash = 0;
+		int base = rowOffsets[row] * size - 1;
+		for (int i = 0; i < values.length; ++i, base += size) {
+			hash ^= keys[base + values[i]];
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,251 @@
+package edu.carleton.comp4107.project;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads puzzles one after another from a stream of text, in either of two
+ * formats, which may be mixed:
+ * 	a grid: one line per row, with values separated by spaces or tabs and 0
+ * 		for a blank cell, as loaded by SudokuUtils.loadPuzzle
+ * 	a single line of one digit per cell, row by row, with 0 or . for a
+ * 		blank cell, e.g. the 81 characters of a 9x9 puzzle
+ * A line with no spaces or tabs is taken to be a whole puzzle. Blank lines
+ * between puzzles are skipped.
+ *
+ * The text is scanned byte by byte from a buffer of its own, without
+ * creating strings or splitting lines, so that large collections of
+ * puzzles can be read quickly; the only objects created per puzzle are its
+ * rows.
+ */
+public class PuzzleReader implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final InputStream in;
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private boolean eof;
+	/* The bounds of the line found by nextLine, excluding its line break */
+	private int lineStart;
+	private int lineEnd;
+
+	/**
+	 * @param in the stream to read; it is closed along with this reader
+	 */
+	public PuzzleReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * @param filename the file to read
+	 * @throws IOException if the file can't be opened
+	 */
+	public PuzzleReader(String filename) throws IOException {
+		this(new FileInputStream(filename));
+	}
+
+	/**
+	 * @return the next puzzle, with BLANK for blank cells, or null if there
+	 * 	are no more
+	 * @throws IOException if the puzzle is malformed, with one of the
+	 * 	messages of SudokuSolver, or can't be read
+	 */
+	public int[][] read() throws IOException {
+		do {
+			if (!nextLine()) return null;
+		} while (isBlankLine());
+		return hasSeparator() ? readGrid() : readLine();
+	}
+
+	/**
+	 * @return whether any non-blank text is left
+	 * @throws IOException if the stream can't be read
+	 */
+	public boolean hasMore() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				if (!isSpace(buf[pos])) return true;
+				++pos;
+			}
+			if (!fill()) return false;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Parse a puzzle written on one line
+	 */
+	private int[][] readLine() throws IOException {
+		int length = lineEnd - lineStart;
+		int size = squareRoot(length);
+		if (size < 0 || squareRoot(size) < 0) {
+			throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.SIZE_ERR);
+		}
+		/* Row by row, as a multi-dimensional allocation is much slower */
+		int[][] puzzle = new int[size][];
+		int p = lineStart;
+		for (int i = 0; i < size; ++i) {
+			int[] row = puzzle[i] = new int[size];
+			for (int j = 0; j < size; ++j) {
+				int c = buf[p++];
+				if (c >= '1' && c <= '9') {
+					row[j] = c - '0';
+				} else if (c != '0' && c != '.') {
+					throw unexpected(c, i);
+				}
+			}
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Parse a puzzle written as a grid, starting at its first row
+	 */
+	private int[][] readGrid() throws IOException {
+		int size = countValues();
+		if (squareRoot(size) < 0) {
+			throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.SIZE_ERR);
+		}
+		int[][] puzzle = new int[size][];
+		for (int i = 0; i < size; ++i) {
+			if (i > 0 && (!nextLine() || isBlankLine())) {
+				throw new IOException(SudokuSolver.DATA_ERR + SudokuSolver.NUM_ROWS_ERR);
+			}
+			int[] row = new int[size];
+			int count = 0;
+			int p = lineStart;
+			while (p < lineEnd) {
+				int c = buf[p];
+				if (isSpace(c)) {
+					++p;
+					continue;
+				}
+				int value = 0;
+				do {
+					if (c < '0' || c > '9') throw unexpected(c, i);
+					value = value * 10 + c - '0';
+					c = ++p < lineEnd ? buf[p] : ' ';
+				} while (!isSpace(c));
+				if (count == size) {
+					throw new IOException(SudokuSolver.DATA_ERR +
+							SudokuSolver.ROW_LEN_ERR + (i + 1));
+				}
+				row[count++] = value;
+			}
+			if (count != size) {
+				throw new IOException(SudokuSolver.DATA_ERR +
+						SudokuSolver.ROW_LEN_ERR + (i + 1));
+			}
+			puzzle[i] = row;
+		}
+		return puzzle;
+	}
+
+	/**
+	 * @return the number of values on the current line
+	 */
+	private int countValues() {
+		int count = 0;
+		boolean inValue = false;
+		for (int p = lineStart; p < lineEnd; ++p) {
+			boolean space = isSpace(buf[p]);
+			if (!space && !inValue) ++count;
+			inValue = !space;
+		}
+		return count;
+	}
+
+	private IOException unexpected(int c, int row) {
+		return new IOException(SudokuSolver.DATA_ERR + "Unexpected character '" +
+				(char) (c & 0xFF) + "' at row " + (row + 1));
+	}
+
+	private boolean isBlankLine() {
+		for (int p = lineStart; p < lineEnd; ++p) {
+			if (!isSpace(buf[p])) return false;
+		}
+		return true;
+	}
+
+	private boolean hasSeparator() {
+		for (int p = lineStart; p < lineEnd; ++p) {
+			if (buf[p] == ' ' || buf[p] == '\t') return true;
+		}
+		return false;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	/**
+	 * @return the square root of n if n is a square, otherwise -1
+	 */
+	private static int squareRoot(int n) {
+		int root = (int) Math.round(Math.sqrt(n));
+		return root * root == n ? root : -1;
+	}
+
+	/**
+	 * Find the next line, reading more of the stream as needed so that the
+	 * 	whole line is in the buffer
+	 * @return false if the stream is exhausted
+	 */
+	private boolean nextLine() throws IOException {
+		int p = pos;
+		while (true) {
+			while (p < limit) {
+				if (buf[p] == '\n') {
+					setLine(pos, p, p + 1);
+					return true;
+				}
+				++p;
+			}
+			int scanned = p - pos;
+			if (!fill()) {
+				if (pos == limit) return false;
+				setLine(pos, limit, limit);
+				return true;
+			}
+			p = pos + scanned;
+		}
+	}
+
+	private void setLine(int start, int end, int next) {
+		lineStart = start;
+		lineEnd = end > start && buf[end - 1] == '\r' ? end - 1 : end;
+		pos = next;
+	}
+
+	/**
+	 * Read more of the stream after the data not yet consumed, moving that
+	 * 	data to the start of the buffer and growing the buffer if it is full
+	 * @return false if nothing more could be read
+	 */
+	private boolean fill() throws IOException {
+		if (eof) return false;
+		int remaining = limit - pos;
+		if (remaining == buf.length) {
+			byte[] bigger = new byte[buf.length * 2];
+			System.arraycopy(buf, pos, bigger, 0, remaining);
+			buf = bigger;
+		} else if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, remaining);
+		}
+		pos = 0;
+		limit = remaining;
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+}
@@ -0,0 +1,27 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgap.InvalidConfigurationException;
+
+/**
+ * A way of making one attempt at solving a puzzle
+ */
+public interface SolverEngine {
+	/**
+	 * Make one attempt at solving a puzzle
+	 * @param t the try number, used for reporting
+	 * @param layout the layout of the puzzle
+	 * @param random the source of every random choice the attempt makes;
+	 * 	used only by the thread making the attempt
+	 * @param stop set when the puzzle is solved; the attempt is cancelled
+	 * 	as soon as it is set by anyone else
+	 * @return the outcome of the attempt
+	 * @throws InvalidConfigurationException
+	 * @throws InterruptedException
+	 */
+	TryResult solve(int t, PuzzleLayout layout, SplittableRandom random,
+			AtomicBoolean stop)
+			throws InvalidConfigurationException, InterruptedException;
+}
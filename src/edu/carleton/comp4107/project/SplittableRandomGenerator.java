@@ -0,0 +1,66 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+
+import org.jgap.RandomGenerator;
+
+/**
+ * A JGAP random number generator drawing from a SplittableRandom. Every
+ * population's configuration gets its own, so the operators, selectors and
+ * chromosomes of a population share no random state with any other
+ * population, and a population's numbers depend only on the generator it
+ * was given, never on how threads were scheduled.
+ *
+ * Like the rest of a population, a generator is only ever used by the
+ * thread evolving that population.
+ */
+public class SplittableRandomGenerator implements RandomGenerator {
+	private static final long serialVersionUID = 1L;
+	private transient SplittableRandom random;
+
+	/**
+	 * @param random the generator to draw from
+	 */
+	public SplittableRandomGenerator(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Draw from another generator from now on, e.g. when a configuration is
+	 * 	reused for another attempt
+	 * @param random the generator to draw from
+	 */
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	@Override
+	public int nextInt() {
+		return random.nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	@Override
+	public long nextLong() {
+		return random.nextLong();
+	}
+
+	@Override
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	@Override
+	public float nextFloat() {
+		return random.nextFloat();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return random.nextBoolean();
+	}
+}
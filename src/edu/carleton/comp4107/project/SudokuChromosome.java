@@ -0,0 +1,614 @@
+package edu.carleton.comp4107.project;
+
+import java.util.Arrays;
+
+import org.jgap.BaseChromosome;
+import org.jgap.Configuration;
+import org.jgap.FitnessFunction;
+import org.jgap.Gene;
+import org.jgap.IGeneConstraintChecker;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.RandomGenerator;
+import org.jgap.impl.CompositeGene;
+import org.jgap.impl.IntegerGene;
+
+/**
+ * A chromosome holding, for each row of the puzzle, an array of the values
+ * of that row's blank cells. Each row is a permutation of the values
+ * missing from that row of the puzzle; see PuzzleLayout for how blank cells
+ * are numbered.
+ *
+ * Row arrays are shared copy-on-write: offspring and clones refer to the
+ * same arrays as their parents for every row that is the same, and a row
+ * is only copied when a chromosome that doesn't own it is about to change
+ * it. Once an array has been shared it is never written again, so the
+ * cost of a generation follows how many rows actually change. Occupancy
+ * counters are shared by clones too, and count the chromosomes sharing
+ * them so that the last one can change them in place.
+ *
+ * A chromosome may come from a ChromosomeArena, in which case its
+ * offspring, clones and copied rows come from the same arena, and it is
+ * recycled once it drops out of the population.
+ *
+ * Each row's Zobrist hash (see PuzzleLayout) is kept up to date alongside
+ * it, travelling with the row when it is shared and updated in constant
+ * time by a swap, so getHash() costs one XOR per row.
+ *
+ * Gene objects are only made when asked for, in the shape of the original
+ * encoding: one CompositeGene per row, holding an IntegerGene per blank
+ * cell. They are copies, so changing one changes nothing until it is
+ * given back to setGene or setGenes, which copy its values into the row.
+ * The operators, fitness function and breeders here all work on the rows
+ * directly, and populations are made by SudokuSolver rather than by JGAP's
+ * random initialisation, so no genes are made while evolving.
+ */
+public class SudokuChromosome extends BaseChromosome {
+	private static final long serialVersionUID = 1L;
+	private final PuzzleLayout layout;
+	private final int[][] rows;
+	/* The hash of each row, as PuzzleLayout.hashRow computes it */
+	private final long[] rowHashes;
+	/* Whether each row array belongs to this chromosome alone and may be
+	 * written in place; null if none do */
+	private boolean[] owned;
+	private final ChromosomeArena arena;
+	/* The last generation this chromosome was found alive by its arena */
+	private int mark;
+	private double fitness = FitnessFunction.NO_FITNESS_VALUE;
+	private OccupancyCounters occupancy;
+	private boolean selected;
+	private Object applicationData;
+
+	/**
+	 * Create a chromosome with each row's missing values in ascending order
+	 * @param conf the configuration
+	 * @param layout the layout of the puzzle being solved
+	 * @throws InvalidConfigurationException
+	 */
+	public SudokuChromosome(Configuration conf, PuzzleLayout layout)
+			throws InvalidConfigurationException {
+		this(conf, layout, missingValues(layout), null);
+		owned = new boolean[layout.getSize()];
+		Arrays.fill(owned, true);
+	}
+
+	/**
+	 * Create a chromosome around existing row arrays; neither array is
+	 * copied
+	 * @param conf the configuration
+	 * @param layout the layout of the puzzle being solved
+	 * @param rows the values of the blank cells of each row
+	 * @param owned whether each row array belongs to this chromosome alone,
+	 * 	or null if none do. Row arrays that aren't owned are never
+	 * 	modified.
+	 * @throws InvalidConfigurationException
+	 */
+	public SudokuChromosome(Configuration conf, PuzzleLayout layout, int[][] rows,
+			boolean[] owned) throws InvalidConfigurationException {
+		this(conf, layout, rows, owned, null);
+	}
+
+	/**
+	 * @param conf the configuration
+	 * @param layout the layout of the puzzle being solved
+	 * @param rows the values of the blank cells of each row
+	 * @param owned whether each row array belongs to this chromosome alone
+	 * @param arena the arena this chromosome comes from, or null
+	 * @throws InvalidConfigurationException
+	 */
+	SudokuChromosome(Configuration conf, PuzzleLayout layout, int[][] rows,
+			boolean[] owned, ChromosomeArena arena) throws InvalidConfigurationException {
+		super(conf);
+		this.layout = layout;
+		this.rows = rows;
+		this.owned = owned;
+		this.arena = arena;
+		this.rowHashes = new long[rows.length];
+		for (int i = 0; i < rows.length; ++i) {
+			if (rows[i] != null) rowHashes[i] = layout.hashRow(i, rows[i]);
+		}
+	}
+
+	private static int[][] missingValues(PuzzleLayout layout) {
+		int[][] rows = new int[layout.getSize()][];
+		for (int i = 0; i < rows.length; ++i) {
+			rows[i] = layout.getMissingValues(i);
+		}
+		return rows;
+	}
+
+	public PuzzleLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @param row the row number
+	 * @return the values of the blank cells of the row. The array may be
+	 * 	shared with other chromosomes and must not be modified, nor kept
+	 * 	beyond the next change to this chromosome; see shareRow.
+	 */
+	public int[] getRow(int row) {
+		return rows[row];
+	}
+
+	/**
+	 * Give up ownership of a row so that its array can be used by another
+	 * 	chromosome; this chromosome will copy the row before changing it
+	 * @param row the row number
+	 * @return the values of the blank cells of the row, which must not be
+	 * 	modified
+	 */
+	public int[] shareRow(int row) {
+		if (owned != null) owned[row] = false;
+		return rows[row];
+	}
+
+	/**
+	 * @return a new array of every row, sharing their arrays as shareRow
+	 * 	does
+	 */
+	public int[][] shareRows() {
+		if (owned != null) Arrays.fill(owned, false);
+		return rows.clone();
+	}
+
+	/**
+	 * @return a chromosome for the same puzzle with no rows set, from this
+	 * 	chromosome's arena if it has one
+	 * @throws InvalidConfigurationException
+	 */
+	SudokuChromosome newSibling() throws InvalidConfigurationException {
+		if (arena != null) {
+			return arena.obtain();
+		}
+		return new SudokuChromosome(getConfiguration(), layout,
+				new int[layout.getSize()][], new boolean[layout.getSize()]);
+	}
+
+	/**
+	 * @param row the row number
+	 * @return an array the length of the row with unspecified contents, from
+	 * 	this chromosome's arena if it has one
+	 */
+	int[] newRow(int row) {
+		int length = layout.getRowLength(row);
+		return arena != null ? arena.obtainRow(length) : new int[length];
+	}
+
+	/**
+	 * Set the array of a row of a chromosome from newSibling
+	 * @param row the row number
+	 * @param values the values of the blank cells of the row
+	 * @param owns whether the array belongs to this chromosome alone
+	 */
+	void setRow(int row, int[] values, boolean owns) {
+		rows[row] = values;
+		owned[row] = owns;
+		rowHashes[row] = layout.hashRow(row, values);
+	}
+
+	/**
+	 * Set a row of a chromosome from newSibling to share the array of the
+	 * 	same row of another chromosome, as shareRow does
+	 * @param row the row number
+	 * @param other the chromosome to share the row of
+	 */
+	void shareRowOf(int row, SudokuChromosome other) {
+		rows[row] = other.shareRow(row);
+		owned[row] = false;
+		rowHashes[row] = other.rowHashes[row];
+	}
+
+	/**
+	 * @return the Zobrist hash of the values of every blank cell; equal
+	 * 	chromosomes have equal hashes
+	 */
+	public long getHash() {
+		long hash = 0;
+		for (int i = 0; i < rowHashes.length; ++i) {
+			hash ^= rowHashes[i];
+		}
+		return hash;
+	}
+
+	/**
+	 * Give a chromosome from newSibling, with every row set, occupancy
+	 * 	counters and a fitness value derived from those of the chromosome it
+	 * 	was mostly made from, counting again only the cells that differ.
+	 * 	Nothing is done if that chromosome has no counters.
+	 * @param parent the chromosome this one was mostly made from
+	 */
+	void deriveOccupancy(SudokuChromosome parent) {
+		if (parent.occupancy == null) return;
+		OccupancyCounters counters = arena != null ? arena.obtainCounters() : null;
+		occupancy = counters != null ? counters.copyFrom(parent.occupancy)
+				: parent.occupancy.copy();
+		for (int i = 0; i < rows.length; ++i) {
+			if (rows[i] != parent.rows[i]) {
+				occupancy.replaceRow(layout.getRowOffset(i), parent.rows[i], rows[i]);
+			}
+		}
+		fitness = occupancy.getScore();
+	}
+
+	/**
+	 * Record that this chromosome is alive in a generation, if it comes from
+	 * 	the given arena
+	 */
+	void mark(ChromosomeArena arena, int generation) {
+		if (this.arena == arena) mark = generation;
+	}
+
+	boolean isMarked(int generation) {
+		return mark == generation;
+	}
+
+	/**
+	 * Give the row arrays and counters that belong to this chromosome alone
+	 * 	back to its arena and clear it for reuse
+	 */
+	void release() {
+		for (int i = 0; i < rows.length; ++i) {
+			if (owned[i]) {
+				arena.freeRow(rows[i]);
+				owned[i] = false;
+			}
+			rows[i] = null;
+		}
+		dropOccupancy();
+		fitness = FitnessFunction.NO_FITNESS_VALUE;
+		selected = false;
+		applicationData = null;
+		setAge(0);
+		resetOperatedOn();
+	}
+
+	/**
+	 * Stop using the occupancy counters, giving them back to the arena if
+	 * 	they belong to this chromosome alone
+	 */
+	private void dropOccupancy() {
+		if (occupancy != null && occupancy.removeUser() == 0 && arena != null) {
+			arena.freeCounters(occupancy);
+		}
+		occupancy = null;
+	}
+
+	/**
+	 * @return a new array of the values of every blank cell in index order
+	 */
+	public int[] toCells() {
+		int[] cells = new int[layout.getNumBlanks()];
+		for (int i = 0; i < rows.length; ++i) {
+			System.arraycopy(rows[i], 0, cells, layout.getRowOffset(i), rows[i].length);
+		}
+		return cells;
+	}
+
+	/**
+	 * @return the column and box occupancy counters of this chromosome, or
+	 * 	null if it has not been swapped since it was created
+	 */
+	public OccupancyCounters getOccupancy() {
+		return occupancy;
+	}
+
+	/**
+	 * @param row the row number
+	 * @param col the column number
+	 * @return the value of the cell, whether pre-filled or not
+	 */
+	public int getValue(int row, int col) {
+		int index = layout.getCellIndex(row, col);
+		return index < 0 ? layout.getPuzzle()[row][col]
+				: rows[row][layout.getBlankPosition(index)];
+	}
+
+	/**
+	 * Swap the values of two blank cells of the same row, copying the row
+	 * first if it is shared. The fitness value is updated incrementally from
+	 * the occupancy counters, which are created on the first swap.
+	 * @param row the row number
+	 * @param i the position of the first cell among the row's blank cells
+	 * @param j the position of the second cell among the row's blank cells
+	 */
+	public void swap(int row, int i, int j) {
+		countOccupancy();
+		if (occupancy.isShared()) {
+			OccupancyCounters counters = arena != null ? arena.obtainCounters() : null;
+			OccupancyCounters shared = occupancy;
+			occupancy = counters != null ? counters.copyFrom(shared) : shared.copy();
+			shared.removeUser();
+		}
+		int[] values = writableRow(row);
+		int offset = layout.getRowOffset(row);
+		occupancy.swap(offset + i, offset + j, values[i], values[j]);
+		rowHashes[row] ^= layout.getKey(offset + i, values[i])
+				^ layout.getKey(offset + j, values[j])
+				^ layout.getKey(offset + i, values[j])
+				^ layout.getKey(offset + j, values[i]);
+		int tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+		fitness = occupancy.getScore();
+	}
+
+	/**
+	 * @return the column and box occupancy counters of this chromosome,
+	 * 	counting them first if it has none; they must not be changed
+	 */
+	public OccupancyCounters countOccupancy() {
+		if (occupancy == null) {
+			OccupancyCounters counters = arena != null ? arena.obtainCounters() : null;
+			occupancy = counters != null ? counters.recount(rows)
+					: new OccupancyCounters(layout, rows);
+		}
+		return occupancy;
+	}
+
+	/**
+	 * Randomly permute the values of every row
+	 * @param rand a random number generator
+	 */
+	public void shuffle(RandomGenerator rand) {
+		for (int row = 0; row < layout.getSize(); ++row) {
+			int[] values = writableRow(row);
+			for (int i = values.length - 1; i > 0; --i) {
+				int j = rand.nextInt(i + 1);
+				int tmp = values[i];
+				values[i] = values[j];
+				values[j] = tmp;
+			}
+			rowHashes[row] = layout.hashRow(row, values);
+		}
+		fitness = FitnessFunction.NO_FITNESS_VALUE;
+		dropOccupancy();
+	}
+
+	/**
+	 * @return the array of a row, copied first if it isn't owned
+	 */
+	private int[] writableRow(int row) {
+		if (owned == null) {
+			owned = new boolean[rows.length];
+		}
+		if (!owned[row]) {
+			int[] copy = newRow(row);
+			System.arraycopy(rows[row], 0, copy, 0, copy.length);
+			rows[row] = copy;
+			owned[row] = true;
+		}
+		return rows[row];
+	}
+
+	/**
+	 * @return a new grid with the puzzle filled in by this chromosome
+	 */
+	public int[][] toGrid() {
+		int size = layout.getSize();
+		int[][] grid = new int[size][size];
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				grid[i][j] = getValue(i, j);
+			}
+		}
+		return grid;
+	}
+
+	@Override
+	public int size() {
+		return layout.getSize();
+	}
+
+	/**
+	 * @return a new CompositeGene for each row, as getGene makes them
+	 */
+	@Override
+	public Gene[] getGenes() {
+		Gene[] genes = new Gene[rows.length];
+		for (int row = 0; row < rows.length; ++row) {
+			genes[row] = getGene(row);
+		}
+		return genes;
+	}
+
+	/**
+	 * @param index the row number
+	 * @return a new CompositeGene holding an IntegerGene for the value of
+	 * 	each blank cell of the row
+	 */
+	@Override
+	public Gene getGene(int index) {
+		try {
+			CompositeGene gene = new CompositeGene(getConfiguration());
+			for (int value : rows[index]) {
+				IntegerGene num = new IntegerGene(getConfiguration(), 1, layout.getSize());
+				num.setAllele(value);
+				gene.addGene(num, true);
+			}
+			return gene;
+		} catch (InvalidConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Set every row from genes like those getGenes makes
+	 * @param genes a gene for each row
+	 * @throws InvalidConfigurationException if there isn't a gene for each
+	 * 	row
+	 * @throws IllegalArgumentException if a gene doesn't hold a permutation
+	 * 	of the values missing from its row
+	 */
+	@Override
+	public void setGenes(Gene[] genes) throws InvalidConfigurationException {
+		if (genes.length != rows.length) {
+			throw new InvalidConfigurationException("Expected a gene for each of the " +
+					rows.length + " rows, not " + genes.length);
+		}
+		for (int row = 0; row < genes.length; ++row) {
+			setGene(row, genes[row]);
+		}
+	}
+
+	/**
+	 * Set a row from a gene like those getGene makes
+	 * @param index the row number
+	 * @param gene a CompositeGene holding an IntegerGene for the value of
+	 * 	each blank cell of the row
+	 * @throws IllegalArgumentException if the gene doesn't hold a
+	 * 	permutation of the values missing from the row
+	 */
+	@Override
+	public void setGene(int index, Gene gene) {
+		if (!(gene instanceof CompositeGene)
+				|| ((CompositeGene) gene).size() != rows[index].length) {
+			throw new IllegalArgumentException("Row " + (index + 1) +
+					" needs a CompositeGene of " + rows[index].length + " values");
+		}
+		int[] values = new int[rows[index].length];
+		for (int i = 0; i < values.length; ++i) {
+			Gene num = ((CompositeGene) gene).geneAt(i);
+			if (!(num instanceof IntegerGene)) {
+				throw new IllegalArgumentException("Row " + (index + 1) +
+						" needs an IntegerGene for each value");
+			}
+			values[i] = ((IntegerGene) num).intValue();
+		}
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		if (!Arrays.equals(sorted, layout.getMissingValues(index))) {
+			throw new IllegalArgumentException("Row " + (index + 1) +
+					" must hold the values missing from it: " + Arrays.toString(values));
+		}
+		System.arraycopy(values, 0, writableRow(index), 0, values.length);
+		rowHashes[index] = layout.hashRow(index, values);
+		fitness = FitnessFunction.NO_FITNESS_VALUE;
+		dropOccupancy();
+	}
+
+	@Override
+	public double getFitnessValue() {
+		if (fitness < 0 || getConfiguration().isAlwaysCalculateFitness()) {
+			fitness = getConfiguration().getFitnessFunction().getFitnessValue(this);
+		}
+		return fitness;
+	}
+
+	@Override
+	public double getFitnessValueDirectly() {
+		return fitness;
+	}
+
+	@Override
+	public void setFitnessValue(double value) {
+		if (value >= 0) fitness = value;
+	}
+
+	@Override
+	public void setFitnessValueDirectly(double value) {
+		fitness = value;
+	}
+
+	@Override
+	public void setIsSelectedForNextGeneration(boolean selected) {
+		this.selected = selected;
+	}
+
+	@Override
+	public boolean isSelectedForNextGeneration() {
+		return selected;
+	}
+
+	@Override
+	public void setConstraintChecker(IGeneConstraintChecker checker) {
+		// every row is a permutation by construction; nothing to check
+	}
+
+	@Override
+	public void setApplicationData(Object data) {
+		applicationData = data;
+	}
+
+	@Override
+	public Object getApplicationData() {
+		return applicationData;
+	}
+
+	@Override
+	public void cleanup() {
+	}
+
+	@Override
+	public Object clone() {
+		try {
+			SudokuChromosome copy = newSibling();
+			for (int i = 0; i < rows.length; ++i) {
+				copy.shareRowOf(i, this);
+			}
+			copy.fitness = fitness;
+			/* The counters are shared like the rows, and copied by any
+			 * chromosome that changes while others still share them */
+			copy.occupancy = occupancy;
+			if (occupancy != null) occupancy.addUser();
+			copy.applicationData = applicationData;
+			copy.setAge(getAge());
+			return copy;
+		} catch (InvalidConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Used by JGAP to create random chromosomes when refilling a population;
+	 * 	IHandler declares clazz as a raw Class
+	 */
+	@SuppressWarnings("rawtypes")
+	public boolean isHandlerFor(Object obj, Class clazz) {
+		return SudokuChromosome.class == clazz;
+	}
+
+	/**
+	 * Used by JGAP to create random chromosomes when refilling a population;
+	 * 	IHandler declares clazz as a raw Class
+	 */
+	@SuppressWarnings("rawtypes")
+	public Object perform(Object obj, Class clazz, Object params)
+			throws Exception {
+		SudokuChromosome chrom = new SudokuChromosome(getConfiguration(), layout);
+		chrom.shuffle(getConfiguration().getRandomGenerator());
+		return chrom;
+	}
+
+	@Override
+	public int compareTo(Object other) {
+		if (other == null) return 1;
+		int[][] otherRows = ((SudokuChromosome) other).rows;
+		for (int i = 0; i < rows.length; ++i) {
+			if (rows[i] == otherRows[i]) continue;
+			for (int j = 0; j < rows[i].length; ++j) {
+				if (rows[i][j] != otherRows[i][j]) {
+					return rows[i][j] < otherRows[i][j] ? -1 : 1;
+				}
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof SudokuChromosome &&
+				Arrays.deepEquals(rows, ((SudokuChromosome) other).rows);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.deepHashCode(rows);
+	}
+
+	@Override
+	public String toString() {
+		return "SudokuChromosome" + Arrays.deepToString(rows) + " fitness " + fitness;
+	}
+
+}
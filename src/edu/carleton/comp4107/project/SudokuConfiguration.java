@@ -0,0 +1,86 @@
+package edu.carleton.comp4107.project;
+
+import java.util.SplittableRandom;
+
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.impl.DefaultConfiguration;
+
+/**
+ * The configuration of one population, which can be reused for one run
+ * after another. JGAP treats a run's first generation differently, going
+ * by the configuration's generation number, and never resets that number;
+ * this configuration keeps its own count so that each run can start again
+ * from zero. Its random numbers come from a SplittableRandomGenerator
+ * that is given a new source for each run.
+ *
+ * JGAP won't let the sample chromosome be replaced once it is set, but it
+ * belongs to the puzzle being solved; each run sets its own sample here,
+ * which getSampleChromosome returns in place of the first.
+ */
+public class SudokuConfiguration extends DefaultConfiguration {
+	private static final long serialVersionUID = 1L;
+	private int generationNr;
+	private SudokuChromosome sample;
+
+	/**
+	 * @param id a name unique to this configuration
+	 * @param name a descriptive name
+	 * @throws InvalidConfigurationException
+	 */
+	public SudokuConfiguration(String id, String name)
+			throws InvalidConfigurationException {
+		super(id, name);
+		setRandomGenerator(new SplittableRandomGenerator(new SplittableRandom()));
+	}
+
+	/**
+	 * Prepare for a new run: count generations from zero again, draw
+	 * 	random numbers from the given generator, make the sample chromosome
+	 * 	one of the run's puzzle, and forget the scores remembered by the
+	 * 	fitness function, which may be for another puzzle
+	 * @param random the source of the run's random choices
+	 * @param layout the layout of the run's puzzle
+	 * @throws InvalidConfigurationException
+	 */
+	public void restart(SplittableRandom random, PuzzleLayout layout)
+			throws InvalidConfigurationException {
+		generationNr = 0;
+		if (sample == null || sample.getLayout() != layout) {
+			sample = new SudokuChromosome(this, layout);
+		}
+		((SplittableRandomGenerator) getRandomGenerator()).setRandom(random);
+		if (getFitnessFunction() instanceof SudokuFitnessFunction) {
+			((SudokuFitnessFunction) getFitnessFunction()).clearCache();
+		}
+	}
+
+	/**
+	 * Prepare to carry on a run from a snapshot taken at the start of a
+	 * 	generation: as restart, but counting generations from that one
+	 * @param random the source of the run's random choices from here on
+	 * @param layout the layout of the run's puzzle
+	 * @param generationNr the number of the generation
+	 * @throws InvalidConfigurationException
+	 */
+	public void resume(SplittableRandom random, PuzzleLayout layout,
+			int generationNr) throws InvalidConfigurationException {
+		restart(random, layout);
+		this.generationNr = generationNr;
+	}
+
+	@Override
+	public IChromosome getSampleChromosome() {
+		return sample != null ? sample : super.getSampleChromosome();
+	}
+
+	@Override
+	public int getGenerationNr() {
+		return generationNr;
+	}
+
+	@Override
+	public void incrementGenerationNr() {
+		++generationNr;
+	}
+}
@@ -6,38 +6,136 @@ import java.util.Set;
 import org.jgap.FitnessFunction;
 import org.jgap.IChromosome;
 
-
+/**
+ * Scores a solution by the number of distinct values in each column and
+ * box. Everything about the puzzle is taken from the solution's layout, so
+ * one instance can score solutions to any number of puzzles, and since
+ * evaluation keeps no state beyond per-thread working space it may be
+ * shared by any number of threads.
+ *
+ * Scores may be remembered in a FitnessCache, keyed by the solution's hash,
+ * so that a solution identical to one scored recently isn't counted again.
+ * The cache belongs to one fitness function and so to one population; it
+ * must be cleared before the function scores solutions to another puzzle.
+ */
 public class SudokuFitnessFunction extends FitnessFunction {
-	private final int[][] puzzle;
+	/** The largest grid whose values fit in a long bitmask */
+	public static final int MAX_BITMASK_SIZE = 64;
+	/* Working space for the column masks followed by the box masks, one
+	 * per thread so that evaluation neither allocates nor shares state */
+	private static final ThreadLocal<long[]> MASKS = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2 * MAX_BITMASK_SIZE];
+		}
+	};
+	private final boolean useBitmask;
+	private final FitnessCache cache;
 	
-	public SudokuFitnessFunction(int[][] puzzle) {
-		this.puzzle = puzzle;
+	/**
+	 * Create a fitness function, counting with bitmasks whenever the grid is
+	 * 	small enough
+	 */
+	public SudokuFitnessFunction() {
+		this(true);
+	}
+
+	/**
+	 * @param useBitmask whether to count distinct values with bitmasks
+	 * 	rather than sets, for grids small enough
+	 */
+	public SudokuFitnessFunction(boolean useBitmask) {
+		this(useBitmask, null);
+	}
+
+	/**
+	 * @param useBitmask whether to count distinct values with bitmasks
+	 * 	rather than sets, for grids small enough
+	 * @param cache the cache to remember scores in, or null to always count
+	 */
+	public SudokuFitnessFunction(boolean useBitmask, FitnessCache cache) {
+		this.useBitmask = useBitmask;
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache scores are remembered in, or null
+	 */
+	public FitnessCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Forget every remembered score, e.g. before scoring solutions to
+	 * 	another puzzle
+	 */
+	public void clearCache() {
+		if (cache != null) cache.clear();
 	}
 	
+	/**
+	 * Same as FitnessFunction.getFitnessValue, except that the last computed
+	 * 	value is not recorded; that shared field is the only thing keeping
+	 * 	the superclass from being thread-safe
+	 */
+	@Override
+	public double getFitnessValue(IChromosome chrom) {
+		return evaluate(chrom);
+	}
+
 	@Override
 	protected double evaluate(IChromosome arg0) {
-		int count = 0;
-		int[][] solution = SudokuUtils.formatPuzzle(arg0, this.puzzle);
-		for (int i = 0; i < puzzle.length; ++i) {
-			count += isColumnValid(solution, i);
-			count += isBoxValid(solution, i);
+		SudokuChromosome solution = (SudokuChromosome) arg0;
+		if (solution.getOccupancy() != null) {
+			return solution.getOccupancy().getScore();
 		}
-		return count;
+		if (cache == null) {
+			return count(solution);
+		}
+		long hash = solution.getHash();
+		double score = cache.get(hash);
+		if (score < 0) {
+			score = count(solution);
+			cache.put(hash, score);
+		}
+		return score;
 	}
-	
+
 	/**
-	 * Determines how close a row is to valid (i.e. the number of distinct
-	 * 	values in it)
-	 * @param solution the puzzle
-	 * @param i the row number
-	 * @return the number of distinct values in the row
+	 * @param solution the solution
+	 * @return the number of distinct values in each column and box, summed
 	 */
-	private int isRowValid(int[][] solution, int i) {
-		Set<Integer> values = new HashSet<Integer>();
-		for (int j = 0; j < solution.length; ++j) {
-			values.add(solution[i][j]);
+	private int count(SudokuChromosome solution) {
+		int count = 0;
+		PuzzleLayout layout = solution.getLayout();
+		int size = layout.getSize();
+		if (useBitmask && layout.hasMasks()) {
+			/* One pass over the rows, gathering the values of every column
+			 * and box at once */
+			long[] masks = MASKS.get();
+			for (int i = 0; i < size; ++i) {
+				masks[i] = layout.getGivenColumnMask(i);
+				masks[MAX_BITMASK_SIZE + i] = layout.getGivenBoxMask(i);
+			}
+			int index = 0;
+			for (int i = 0; i < size; ++i) {
+				int[] row = solution.getRow(i);
+				for (int j = 0; j < row.length; ++j, ++index) {
+					long bit = 1L << (row[j] - 1);
+					masks[layout.getBlankColumn(index)] |= bit;
+					masks[MAX_BITMASK_SIZE + layout.getBlankBox(index)] |= bit;
+				}
+			}
+			for (int i = 0; i < size; ++i) {
+				count += Long.bitCount(masks[i]) + Long.bitCount(masks[MAX_BITMASK_SIZE + i]);
+			}
+			return count;
 		}
-		return values.size();
+		for (int i = 0; i < size; ++i) {
+			count += isColumnValid(solution, i);
+			count += isBoxValid(solution, i);
+		}
+		return count;
 	}
 
 	/**
@@ -47,10 +145,10 @@ public class SudokuFitnessFunction extends FitnessFunction {
 	 * @param i the column number
 	 * @return the number of distinct values in the column
 	 */
-	private int isColumnValid(int[][] solution, int i) {
+	private int isColumnValid(SudokuChromosome solution, int i) {
 		Set<Integer> values = new HashSet<Integer>();
-		for (int j = 0; j < solution.length; ++j) {
-			values.add(solution[j][i]);
+		for (int j = 0; j < solution.getLayout().getSize(); ++j) {
+			values.add(solution.getValue(j, i));
 		}
 		return values.size();
 	}
@@ -62,28 +160,17 @@ public class SudokuFitnessFunction extends FitnessFunction {
 	 * @param i the box number (numbered left to right then top to bottom)
 	 * @return the number of distinct values in the box
 	 */
-	private int isBoxValid(int[][] solution, int i) {
+	private int isBoxValid(SudokuChromosome solution, int i) {
 		Set<Integer> values = new HashSet<Integer>();
-		int boxSize = (int)Math.round(Math.sqrt(solution.length));
+		int size = solution.getLayout().getSize();
+		int boxSize = (int)Math.round(Math.sqrt(size));
 		int boxRow = (int)Math.floor((double)i/(double)boxSize)*boxSize;
 		int boxCol = (i % boxSize)*boxSize;
-		for (int j = 0; j < solution.length; ++j) {
+		for (int j = 0; j < size; ++j) {
 			int row = (int)Math.floor((double)j/(double)boxSize) + boxRow;
 			int col = (j % boxSize) + boxCol;
-			values.add(solution[row][col]);
+			values.add(solution.getValue(row, col));
 		}
 		return values.size();
 	}
-	
-	private int doesSolutionMatchPuzzle(int[][] solution) {
-		int count = 0;
-		for (int i = 0; i < solution.length; ++i) {
-			for (int j = 0; j < solution.length; ++j) {
-				if (puzzle[i][j] != SudokuUtils.BLANK && puzzle[i][j] == solution[i][j]) {
-					++count;
-				}
-			}
-		}
-		return count;
-	}
 }
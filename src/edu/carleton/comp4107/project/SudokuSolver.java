@@ -2,17 +2,22 @@ package edu.carleton.comp4107.project;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.jgap.Chromosome;
 import org.jgap.Configuration;
-import org.jgap.Gene;
 import org.jgap.Genotype;
 import org.jgap.IChromosome;
 import org.jgap.InvalidConfigurationException;
 import org.jgap.Population;
+import org.jgap.RandomGenerator;
 import org.jgap.impl.*;
 
 public class SudokuSolver {
@@ -24,6 +29,33 @@ public class SudokuSolver {
 	private static double TOURNAMENT_PROB = 0.4;
 	private static double XOVER_RATE = 0.9;
 	private static int XOVER_TYPE = PermutationCrossover.PMX;
+	private static int THREADS = 1;
+	private static int ISLANDS = 1;
+	private static int MIGRATION_INTERVAL = 20;
+	private static int MIGRANTS = 5;
+	private static int TOPOLOGY = IslandModel.RING;
+	private static boolean PORTFOLIO = false;
+	private static boolean VARY_XOVER = false;
+	private static double[] MUTATION_RATES = null;
+	private static boolean PROPAGATE = true;
+	private static String ENGINE = "ga";
+	private static String BATCH_PATH = null;
+	private static String PACK_PATH = null;
+	private static int WORKERS = Runtime.getRuntime().availableProcessors();
+	private static final ProgressReporter REPORTER =
+			new ProgressReporter(ProgressReporter.GRIDS);
+	private static long SEED = new SplittableRandom().nextLong();
+	private static String METRICS_PATH = null;
+	private static MetricsRecorder METRICS = null;
+	private static int FITNESS_CACHE = 0;
+	private static boolean CONFLICT_MUTATION = false;
+	private static boolean REMOVE_DUPLICATES = false;
+	private static String CHECKPOINT_PATH = null;
+	private static int CHECKPOINT_INTERVAL = 100;
+	private static CheckpointWriter CHECKPOINTS = null;
+	private static String RESUME_PATH = null;
+	private static Checkpoint RESUME = null;
+	private static final String[] XOVER_NAMES = {"order-one", "pmx", "cycle"};
 	static final String DATA_ERR = "Invalid data format: ";
 	static final String SIZE_ERR = "Grid size is not a square number";
 	static final String ROW_LEN_ERR = "Mismatched length at row ";
@@ -32,7 +64,7 @@ public class SudokuSolver {
 
 	/**
 	 * @param args
-	 * --puzzle <filename> the puzzle file to load
+	 * --puzzle <filename> the puzzle file to load, holding a grid or a single line of digits
 	 * --pop-size <value> the population size
 	 * --stuck <value> the number of generations to keep trying without improvement in max fitness before giving up
 	 * --tries <value> the number of times to try to solve the puzzle
@@ -43,12 +75,38 @@ public class SudokuSolver {
 	 * --pmx use partially mapped crossover (default)
 	 * --cycle use cycle crossover
 	 * --mutation <value> the mutation rate
+	 * --mutation-type swap|conflict swap random cells of a row (default), or cells whose values clash with their column or box
+	 * --threads <value> the number of threads to evaluate fitness on
+	 * --islands <value> the number of populations to evolve at once, each on its own thread
+	 * --migration-interval <value> the number of generations between migrations between islands
+	 * --migrants <value> the number of individuals each island sends per migration
+	 * --ring use ring migration topology (default)
+	 * --random-migration send migrants to a randomly chosen island
+	 * --portfolio run all tries at once, cancelling the others when one solves the puzzle
+	 * --vary-crossover cycle through order one, PMX and cycle crossover from try to try
+	 * --mutation-rates <value,value,...> cycle through the given mutation rates from try to try
+	 * --remove-duplicates replace each individual identical to another with a copy swapped in one random row before every generation
+	 * --no-propagation don't fill in forced cells before running the GA
+	 * --engine ga|dlx|hybrid|anneal|native solve with the GA (default), the exact solver, the GA falling back to the exact solver when stuck, simulated annealing, or the GA bred over plain arrays without JGAP
+	 * --batch <path> solve every puzzle in a file or directory, text or packed, printing one line per puzzle
+	 * --workers <value> the number of puzzles to solve at once in batch mode
+	 * --pack <filename> with --batch, write every puzzle to a packed binary file instead of solving them
+	 * --metrics <filename> write statistics of every generation to a CSV file, or a JSON file if the name ends in .json
+	 * --verbosity <level> how much of each attempt's progress to print: 0 nothing, 1 a line per improvement, 2 the grid of each new best solution as well (default: 2)
+	 * --quiet the same as --verbosity 0
+	 * --fitness-cache <value> remember the scores of up to this many distinct chromosomes per population, rather than scoring duplicates again (default: 0, off)
+	 * --seed <value> the seed for every random choice; runs with the same seed and options make the same choices (default: chosen at random and printed)
+	 * --checkpoint <filename> write a snapshot of the attempt in progress to a file every so many generations, on a background thread
+	 * --checkpoint-interval <value> the number of generations between snapshots (default: 100)
+	 * --resume <filename> carry on from a snapshot, with its puzzle and seed, then make the remaining tries
 	 * @throws IOException If the specified file can't be read
 	 * @throws InvalidConfigurationException 
+	 * @throws InterruptedException 
 	 */
 	public static void main(String[] args) 
 			throws IOException, 
-	               InvalidConfigurationException {
+	               InvalidConfigurationException,
+	               InterruptedException {
 		String sep = System.getProperty("file.separator");
 		String puzzleFilename = "data" + sep + "nine" + sep + "medium1.txt";
 		
@@ -69,104 +127,261 @@ public class SudokuSolver {
 				XOVER_RATE = Double.parseDouble(args[++i]);
 			} else if (args[i].equals("--mutation")) {
 				SwapMutation.MUTATION_RATE = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--mutation-type")) {
+				String type = args[++i];
+				if (!type.equals("swap") && !type.equals("conflict")) {
+					System.out.println("Error: Invalid mutation type " + type);
+					System.exit(-1);
+				}
+				CONFLICT_MUTATION = type.equals("conflict");
 			} else if (args[i].equals("--order-one")) {
 				XOVER_TYPE = PermutationCrossover.ORDER_ONE;
 			} else if (args[i].equals("--pmx")) {
 				XOVER_TYPE = PermutationCrossover.PMX;
 			} else if (args[i].equals("--cycle")) {
 				XOVER_TYPE = PermutationCrossover.CYCLE;
+			} else if (args[i].equals("--threads")) {
+				THREADS = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--islands")) {
+				ISLANDS = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--migration-interval")) {
+				MIGRATION_INTERVAL = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--migrants")) {
+				MIGRANTS = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--ring")) {
+				TOPOLOGY = IslandModel.RING;
+			} else if (args[i].equals("--random-migration")) {
+				TOPOLOGY = IslandModel.RANDOM;
+			} else if (args[i].equals("--portfolio")) {
+				PORTFOLIO = true;
+			} else if (args[i].equals("--vary-crossover")) {
+				VARY_XOVER = true;
+			} else if (args[i].equals("--engine")) {
+				ENGINE = args[++i];
+				if (!ENGINE.equals("ga") && !ENGINE.equals("dlx") &&
+						!ENGINE.equals("hybrid") && !ENGINE.equals("anneal") &&
+						!ENGINE.equals("native")) {
+					System.out.println("Error: Invalid engine " + ENGINE);
+					System.exit(-1);
+				}
+			} else if (args[i].equals("--batch")) {
+				BATCH_PATH = args[++i];
+			} else if (args[i].equals("--pack")) {
+				PACK_PATH = args[++i];
+			} else if (args[i].equals("--workers")) {
+				WORKERS = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--metrics")) {
+				METRICS_PATH = args[++i];
+			} else if (args[i].equals("--verbosity")) {
+				int level = Integer.parseInt(args[++i]);
+				if (level < ProgressReporter.QUIET || level > ProgressReporter.GRIDS) {
+					System.out.println("Error: Invalid verbosity " + level);
+					System.exit(-1);
+				}
+				REPORTER.setLevel(level);
+			} else if (args[i].equals("--quiet")) {
+				REPORTER.setLevel(ProgressReporter.QUIET);
+			} else if (args[i].equals("--fitness-cache")) {
+				FITNESS_CACHE = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				SEED = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--checkpoint")) {
+				CHECKPOINT_PATH = args[++i];
+			} else if (args[i].equals("--checkpoint-interval")) {
+				CHECKPOINT_INTERVAL = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--resume")) {
+				RESUME_PATH = args[++i];
+			} else if (args[i].equals("--remove-duplicates")) {
+				REMOVE_DUPLICATES = true;
+			} else if (args[i].equals("--no-propagation")) {
+				PROPAGATE = false;
+			} else if (args[i].equals("--mutation-rates")) {
+				String[] rates = args[++i].split(",");
+				MUTATION_RATES = new double[rates.length];
+				for (int j = 0; j < rates.length; ++j) {
+					MUTATION_RATES[j] = Double.parseDouble(rates[j]);
+				}
 			} else {
 				System.out.println("Error: Invalid argument supplied.");
 				System.exit(-1);
 			}
 		}
 		
-		int[][] puzzle = SudokuUtils.loadPuzzle(puzzleFilename);
-		
-		Configuration conf = new DefaultConfiguration();
-		conf.getGeneticOperators().clear();
-		//Crossover
-		conf.addGeneticOperator(new PermutationCrossover(conf, XOVER_RATE, XOVER_TYPE));
-		//Mutation
-		conf.addGeneticOperator(new SwapMutation());
-		//Selection
-		TournamentSelector tourney = new TournamentSelector(conf, TOURNAMENT_SIZE, TOURNAMENT_PROB);
-		conf.addNaturalSelector(tourney, false);
-		conf.setFitnessFunction(new SudokuFitnessFunction(puzzle));
-		conf.setPopulationSize(POP_SIZE);
-		Gene[] sampleGene = new Gene[puzzle.length];
-
-		for (int i = 0; i < puzzle.length; ++i) {
-			boolean[] seen = new boolean[puzzle.length];
-			for (int j = 0; j < puzzle.length; ++j) {
-				int num = puzzle[i][j];
-				if (num != SudokuUtils.BLANK) seen[num-1] = true;
+		if (PACK_PATH != null) {
+			if (BATCH_PATH == null) {
+				System.out.println("Error: --pack needs --batch");
+				System.exit(-1);
 			}
+			int count = BatchSolver.pack(BATCH_PATH, PACK_PATH);
+			System.out.println("Packed " + count + " puzzles into " + PACK_PATH);
+			return;
+		}
 
-			CompositeGene gene = new CompositeGene(conf);
-			for (int j = 0; j < puzzle.length; ++j) {
-				if (!seen[j]) {
-					IntegerGene num = new IntegerGene(conf, 1, puzzle.length);
-					gene.addGene(num);
-				}
+		if (CHECKPOINT_PATH != null || RESUME_PATH != null) {
+			if (BATCH_PATH != null || PORTFOLIO || ISLANDS > 1 || !ENGINE.equals("ga")) {
+				System.out.println("Error: --checkpoint and --resume need the GA " +
+						"with a single population, making one try at a time");
+				System.exit(-1);
+			}
+			if (CHECKPOINT_INTERVAL < 1) {
+				System.out.println("Error: Invalid checkpoint interval " + CHECKPOINT_INTERVAL);
+				System.exit(-1);
+			}
+		}
+		if (RESUME_PATH != null) {
+			RESUME = Checkpoint.read(RESUME_PATH);
+			if (RESUME.getTry() >= MAX_TRIES) {
+				System.out.println("Error: The checkpoint is of try " + RESUME.getTry() +
+						", but only " + MAX_TRIES + " tries were asked for");
+				System.exit(-1);
 			}
-			sampleGene[i] = gene;
+			SEED = RESUME.getSeed();
+		}
+		if (CHECKPOINT_PATH != null) {
+			CHECKPOINTS = new CheckpointWriter(CHECKPOINT_PATH);
 		}
 
-		Chromosome sampleChromosome = new Chromosome(conf, sampleGene);
-		conf.setSampleChromosome(sampleChromosome);
+		System.out.println("Seed: " + SEED);
+		SplittableRandom random = new SplittableRandom(SEED);
+		if (METRICS_PATH != null) {
+			METRICS = new MetricsRecorder(METRICS_PATH);
+		}
+		if (BATCH_PATH != null) {
+			REPORTER.setLevel(ProgressReporter.QUIET);
+			new BatchSolver(WORKERS, MAX_TRIES, PROPAGATE,
+					XOVER_TYPE, SwapMutation.MUTATION_RATE, random).run(BATCH_PATH);
+			if (METRICS != null) METRICS.close();
+			return;
+		}
+
+		int[][] puzzle;
+		if (RESUME != null) {
+			puzzle = RESUME.getPuzzle();
+			System.out.println("Resuming try " + RESUME.getTry() + " at generation " +
+					RESUME.getGeneration() + " from " + RESUME_PATH);
+		} else {
+			puzzle = SudokuUtils.loadPuzzle(puzzleFilename);
+		}
+		if (PROPAGATE && RESUME == null) {
+			int blanks = countBlanks(puzzle);
+			puzzle = ConstraintPropagator.propagate(puzzle);
+			System.out.println("Constraint propagation filled " +
+					(blanks - countBlanks(puzzle)) + " of " + blanks + " blank cells");
+		}
+		
+		final ForkJoinPool pool = THREADS > 1 ? new ForkJoinPool(THREADS) : null;
+		final PuzzleLayout layout = new PuzzleLayout(puzzle);
 		int maxFitness = puzzle.length*puzzle.length*2;
 		List<Integer> bestFitPerTry = new ArrayList<Integer>();
 		ArrayList<Long> times = new ArrayList<Long>();
 		ArrayList<Integer> generations = new ArrayList<Integer>();
+		final int[] xoverTypes = new int[MAX_TRIES];
+		final double[] mutationRates = new double[MAX_TRIES];
+		/* Split here, in order, so each try's numbers don't depend on when
+		 * it runs */
+		final SplittableRandom[] randoms = new SplittableRandom[MAX_TRIES];
 		for (int t = 0; t < MAX_TRIES; ++t) {
-			Genotype population = new Genotype(conf, generatePopulation(conf, puzzle));
-			int gen;
-			IChromosome bestSolution = null;
+			xoverTypes[t] = VARY_XOVER ? t % XOVER_NAMES.length : XOVER_TYPE;
+			mutationRates[t] = MUTATION_RATES == null ? SwapMutation.MUTATION_RATE
+					: MUTATION_RATES[t % MUTATION_RATES.length];
+			randoms[t] = random.split();
+		}
 
-			int stuckCount = 0;
-			int oldBestFit = 0;
-			long startTime = System.nanoTime();
-			for (gen = 0; gen < MAX_GEN; ++gen) {
-				bestSolution = population.getFittestChromosome();
-				int bestFit = (int) bestSolution.getFitnessValue();
-				if (bestFit <= oldBestFit) {
-					if (++stuckCount >= STUCK_THRESHOLD) {
-						bestFitPerTry.add(bestFit);
-						break;
+		/* The tries before a resumed one have already been made */
+		final int firstTry = RESUME != null ? RESUME.getTry() : 0;
+		List<TryResult> results = new ArrayList<TryResult>();
+		long startTime = System.nanoTime();
+		if (PORTFOLIO) {
+			final AtomicBoolean stop = new AtomicBoolean();
+			ExecutorService executor = Executors.newFixedThreadPool(MAX_TRIES);
+			List<Future<TryResult>> futures = new ArrayList<Future<TryResult>>();
+			for (int t = 0; t < MAX_TRIES; ++t) {
+				final int tryNum = t;
+				futures.add(executor.submit(new Callable<TryResult>() {
+					@Override
+					public TryResult call() throws Exception {
+						return createEngine(pool, xoverTypes[tryNum],
+								mutationRates[tryNum]).solve(tryNum, layout, randoms[tryNum],
+								stop);
 					}
-				} else {
-					System.out.println("Try " + t + "; Generation " + gen +
-							"; Best solution " + bestFit + "/" + maxFitness +
-							"; Stuck for " + stuckCount + " generations");
-					System.out.println("new best: ");
-					SudokuUtils.printPuzzle(SudokuUtils.formatPuzzle(bestSolution, puzzle));
-					stuckCount = 0;
-					oldBestFit = bestFit;
-				}
-				if (bestFit == maxFitness) {
-					long time = System.nanoTime() - startTime;
-					times.add(time / 1000000); // milli-seconds
-					generations.add(gen);
-					System.out.println("Done: " + bestFit + "/" + maxFitness);
-					System.out.println("Time: "+time);
-					break;
+				}));
+			}
+			try {
+				for (Future<TryResult> future : futures) {
+					results.add(future.get());
 				}
-				population.evolve();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				executor.shutdown();
 			}
-			if (bestSolution.getFitnessValue() == maxFitness) {
+		} else {
+			for (int t = firstTry; t < MAX_TRIES; ++t) {
+				results.add(createEngine(pool, xoverTypes[t], mutationRates[t])
+						.solve(t, layout, randoms[t], new AtomicBoolean()));
+			}
+		}
+		long wallTime = System.nanoTime() - startTime;
+		long dropped = REPORTER.close();
+		if (dropped > 0) {
+			System.out.println(dropped + " progress reports dropped; the console couldn't keep up");
+		}
+		if (CHECKPOINTS != null) {
+			int written = CHECKPOINTS.close();
+			System.out.println(written + " checkpoints written to " + CHECKPOINT_PATH);
+		}
+
+		for (TryResult result : results) {
+			if (result.isSolved()) {
+				times.add(result.getTime() / 1000000); // milli-seconds
+				generations.add(result.getGeneration());
+				System.out.println("Done: " + result.getBestFit() + "/" + maxFitness);
+				System.out.println("Time: "+result.getTime());
 				System.out.println();
-				int[][] solved = SudokuUtils.formatPuzzle(bestSolution, puzzle);
-				SudokuUtils.printPuzzle(solved);
+				SudokuUtils.printPuzzle(result.getGrid());
+			} else if (result.isCancelled()) {
+				bestFitPerTry.add(result.getBestFit());
+				System.out.println("Attempt cancelled; puzzle solved by another attempt");
 			} else {
+				bestFitPerTry.add(result.getBestFit());
 				System.out.println("Attempt aborted; score stuck for too long");
 			}
 		}
+		if (pool != null) pool.shutdown();
 		System.out.println("---------------------------");
 		System.out.println("All attempts completed");
 		int numSuccess = times.size();
 
-		System.out.println("Successful attempts: " + numSuccess +"/" + MAX_TRIES);
+		System.out.println("Successful attempts: " + numSuccess +"/" + results.size());
+		for (int t = firstTry; t < MAX_TRIES; ++t) {
+			TryResult result = results.get(t - firstTry);
+			String outcome = result.isSolved() ? "solved" :
+					result.isCancelled() ? "cancelled" : "aborted";
+			System.out.println("Try " + t + " (" + XOVER_NAMES[xoverTypes[t]] +
+					", mutation " + mutationRates[t] + "): " + outcome +
+					" at generation " + result.getGeneration() + " in " +
+					result.getTime() / 1000000 + "ms; best fitness " +
+					result.getBestFit() + "/" + maxFitness +
+					(result.getBytesPerGeneration() < 0 ? "" : "; " +
+					result.getBytesPerGeneration() / 1024 + "KB allocated per generation") +
+					(result.getEvaluations() < 0 ? "" : "; " +
+					result.getEvaluations() + " evaluations"));
+		}
+		/* Tries in a portfolio start together; otherwise each one starts
+		 * when the previous one ends */
+		long firstTime = -1;
+		long elapsed = 0;
+		for (TryResult result : results) {
+			elapsed += result.getTime();
+			long time = PORTFOLIO ? result.getTime() : elapsed;
+			if (result.isSolved() && (firstTime < 0 || time < firstTime)) {
+				firstTime = time;
+			}
+		}
+		if (firstTime >= 0) {
+			System.out.println("Time to first solution: " + firstTime / 1000000 + "ms");
+		}
+		System.out.println("Wall-clock time: " + wallTime / 1000000 + "ms");
 
 		long totalTime = 0;
 		long totalSquaredTime = 0;
@@ -185,6 +400,16 @@ public class SudokuSolver {
 			System.out.println("Successful attempt stats:");
 			System.out.println("Average time: " + avgTime + "ms +/- " + timeStdDev);
 			System.out.println("Average generation: " + avgGen + " +/- " + genStdDev);
+			long totalEvaluations = 0;
+			boolean evaluationsKnown = true;
+			for (TryResult result : results) {
+				if (!result.isSolved()) continue;
+				totalEvaluations += result.getEvaluations();
+				evaluationsKnown &= result.getEvaluations() >= 0;
+			}
+			if (evaluationsKnown) {
+				System.out.println("Average evaluations: " + totalEvaluations / numSuccess);
+			}
 			System.out.println("");
 		}
 		System.out.println("Failed attempt stats:");
@@ -199,9 +424,319 @@ public class SudokuSolver {
 		avgBestFit /= bestFitPerTry.size();
 		System.out.println("Average best fitness reached per attempt: " + avgBestFit);
 		System.out.println("Best fitness reached over all attempts: " + maxBestFit);
-
+		if (METRICS != null) METRICS.close();
 	}
 	
+	/**
+	 * Create the engine selected on the command line for one try
+	 * @param pool the pool to evaluate fitness on, or null
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @return the engine
+	 */
+	private static SolverEngine createEngine(ForkJoinPool pool, int xoverType,
+			double mutationRate) {
+		return createEngine(new GeneticEngine(pool, xoverType, mutationRate),
+				xoverType, mutationRate);
+	}
+
+	/**
+	 * Create the engine selected on the command line
+	 * @param ga the engine to use for the genetic algorithm
+	 * @param xoverType the crossover type ga uses, for the native engine
+	 * @param mutationRate the mutation rate ga uses, for the native engine
+	 * @return the engine
+	 */
+	static SolverEngine createEngine(GeneticEngine ga, int xoverType,
+			double mutationRate) {
+		if (ENGINE.equals("dlx")) {
+			return new DlxEngine();
+		}
+		if (ENGINE.equals("anneal")) {
+			return new AnnealingEngine(MAX_GEN, STUCK_THRESHOLD);
+		}
+		if (ENGINE.equals("hybrid")) {
+			return new HybridEngine(ga);
+		}
+		if (ENGINE.equals("native")) {
+			return createNativeEngine(xoverType, mutationRate);
+		}
+		return ga;
+	}
+
+	/**
+	 * Create an engine running the GA without JGAP, with the settings given
+	 * 	on the command line
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @return the engine
+	 */
+	static NativeEngine createNativeEngine(int xoverType, double mutationRate) {
+		return new NativeEngine(POP_SIZE, MAX_GEN, STUCK_THRESHOLD, TOURNAMENT_SIZE,
+				TOURNAMENT_PROB, XOVER_RATE, xoverType, mutationRate);
+	}
+
+	/**
+	 * Create the configuration for one population
+	 * @param id a name unique to this population
+	 * @param puzzle the puzzle to solve
+	 * @param layout the layout of the puzzle
+	 * @param pool the pool to evaluate fitness on, or null to evaluate on
+	 * 	the calling thread
+	 * @return the configuration
+	 * @throws InvalidConfigurationException
+	 */
+	static SudokuConfiguration createConfiguration(String id, int[][] puzzle,
+			PuzzleLayout layout, ForkJoinPool pool)
+			throws InvalidConfigurationException {
+		return createConfiguration(id, puzzle, layout, pool, XOVER_TYPE,
+				SwapMutation.MUTATION_RATE);
+	}
+
+	/**
+	 * Create the configuration for one population
+	 * @param id a name unique to this population
+	 * @param puzzle the puzzle to solve
+	 * @param layout the layout of the puzzle
+	 * @param pool the pool to evaluate fitness on, or null to evaluate on
+	 * 	the calling thread
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @return the configuration
+	 * @throws InvalidConfigurationException
+	 */
+	static SudokuConfiguration createConfiguration(String id, int[][] puzzle,
+			PuzzleLayout layout, ForkJoinPool pool, int xoverType,
+			double mutationRate)
+			throws InvalidConfigurationException {
+		SudokuConfiguration conf = new SudokuConfiguration(id, id);
+		conf.getGeneticOperators().clear();
+		//Crossover
+		conf.addGeneticOperator(new PermutationCrossover(conf, XOVER_RATE, xoverType));
+		//Mutation
+		conf.addGeneticOperator(CONFLICT_MUTATION ? new ConflictMutation(mutationRate)
+				: new SwapMutation(mutationRate));
+		//Selection
+		TournamentSelector tourney = new TournamentSelector(conf, TOURNAMENT_SIZE, TOURNAMENT_PROB);
+		conf.addNaturalSelector(tourney, false);
+		conf.setFitnessFunction(new SudokuFitnessFunction(true,
+				FITNESS_CACHE > 0 ? new FitnessCache(FITNESS_CACHE) : null));
+		conf.setPopulationSize(POP_SIZE);
+		conf.setBreeder(pool != null ? new ParallelBreeder(pool) : new InstrumentedBreeder());
+		conf.setSampleChromosome(new SudokuChromosome(conf, layout));
+		return conf;
+	}
+
+	/**
+	 * Run one attempt at solving the puzzle with the GA, with a single
+	 * 	population or on islands
+	 * @param t the try number, used for reporting
+	 * @param layout the layout of the puzzle
+	 * @param pool the pool to evaluate fitness on, or null
+	 * @param xoverType the crossover type
+	 * @param mutationRate the mutation rate
+	 * @param random the source of the attempt's random choices
+	 * @param stop set when the puzzle is solved; the attempt is cancelled
+	 * 	as soon as it is set by anyone else
+	 * @return the outcome of the attempt
+	 * @throws InvalidConfigurationException
+	 * @throws InterruptedException
+	 */
+	static TryResult runTry(int t, PuzzleLayout layout, ForkJoinPool pool,
+			int xoverType, double mutationRate, SplittableRandom random,
+			AtomicBoolean stop)
+			throws InvalidConfigurationException, InterruptedException {
+		if (ISLANDS > 1) {
+			IslandModel islands = new IslandModel(layout, ISLANDS,
+					MIGRATION_INTERVAL, MIGRANTS, TOPOLOGY, MAX_GEN,
+					STUCK_THRESHOLD, pool);
+			return islands.run(t, xoverType, mutationRate, random, stop);
+		}
+		SudokuConfiguration conf = createConfiguration("try" + t, layout.getPuzzle(),
+				layout, pool, xoverType, mutationRate);
+		return evolve(t, layout, conf, random, stop);
+	}
+
+	/**
+	 * Run one attempt at solving the puzzle with a single population. The
+	 * 	configuration is restarted for the puzzle, so it may be reused from
+	 * 	one puzzle to the next.
+	 * @param t the try number, used for reporting
+	 * @param layout the layout of the puzzle
+	 * @param conf the configuration of the population
+	 * @param random the source of the attempt's random choices
+	 * @param stop set when the puzzle is solved; the attempt is cancelled
+	 * 	as soon as it is set by anyone else
+	 * @return the outcome of the attempt
+	 * @throws InvalidConfigurationException
+	 */
+	static TryResult evolve(int t, PuzzleLayout layout, SudokuConfiguration conf,
+			SplittableRandom random, AtomicBoolean stop)
+			throws InvalidConfigurationException {
+		Checkpoint resume = takeResume(t);
+		if (resume != null) {
+			conf.resume(new SplittableRandom(resume.getRandomSeed()), layout,
+					resume.getGeneration());
+		} else {
+			conf.restart(random, layout);
+		}
+		int[][] puzzle = layout.getPuzzle();
+		int maxFitness = puzzle.length*puzzle.length*2;
+		ChromosomeArena arena = new ChromosomeArena(conf, layout);
+		Genotype population = new Genotype(conf, resume != null
+				? resume.restorePopulation(conf, layout, arena)
+				: generatePopulation(conf, layout, arena));
+		DuplicateFilter filter = REMOVE_DUPLICATES
+				? new DuplicateFilter(conf, layout, arena) : null;
+		int gen;
+
+		int firstGen = resume != null ? resume.getGeneration() : 0;
+		int stuckCount = resume != null ? resume.getStuckCount() : 0;
+		int oldBestFit = resume != null ? resume.getBestFit() : 0;
+		long startTime = System.nanoTime();
+		long startBytes = SudokuUtils.getAllocatedBytes();
+		for (gen = firstGen; gen < MAX_GEN; ++gen) {
+			if (CHECKPOINTS != null && gen % CHECKPOINT_INTERVAL == 0
+					&& (resume == null || gen > firstGen)) {
+				checkpoint(t, gen, stuckCount, oldBestFit, layout, conf,
+						population.getPopulation());
+			}
+			IChromosome bestSolution = population.getFittestChromosome();
+			if (stop.get()) {
+				break;
+			}
+			int bestFit = (int) bestSolution.getFitnessValue();
+			if (bestFit <= oldBestFit) {
+				if (++stuckCount >= STUCK_THRESHOLD) {
+					break;
+				}
+			} else {
+				if (REPORTER.isReporting(ProgressReporter.PROGRESS)) {
+					REPORTER.report("Try " + t + "; Generation " + gen +
+							"; Best solution " + bestFit + "/" + maxFitness +
+							"; Stuck for " + stuckCount + " generations",
+							REPORTER.isReporting(ProgressReporter.GRIDS)
+							? SudokuUtils.formatPuzzle(bestSolution, puzzle) : null);
+				}
+				stuckCount = 0;
+				oldBestFit = bestFit;
+			}
+			if (bestFit == maxFitness) {
+				stop.set(true);
+				break;
+			}
+			int replaced = filter != null
+					? filter.replaceDuplicates(population.getPopulation()) : 0;
+			breed(population, arena, conf, gen, startTime, replaced);
+		}
+		if (filter != null && REPORTER.isReporting(ProgressReporter.PROGRESS)) {
+			REPORTER.report("Try " + t + "; Replaced " + filter.getTotalReplaced() +
+					" duplicates in " + gen + " generations");
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = SudokuUtils.getAllocatedBytes();
+		long bytesPerGen = startBytes < 0 || gen == firstGen ? -1
+				: (bytes - startBytes) / (gen - firstGen);
+		/* Breeding recycles the chromosomes of the generation before, so the
+		 * fittest is found again in the one the loop ended with */
+		IChromosome bestSolution = population.getFittestChromosome();
+		int bestFit = (int) bestSolution.getFitnessValue();
+		boolean solved = bestFit == maxFitness;
+		return new TryResult(SudokuUtils.formatPuzzle(bestSolution, puzzle), bestFit,
+				solved, !solved && stop.get(), gen, time, bytesPerGen,
+				(long) (gen + 1) * conf.getPopulationSize());
+	}
+
+	/**
+	 * @param t a try number
+	 * @return the snapshot to resume the try from, or null to start it
+	 * 	afresh; a snapshot is only resumed once
+	 */
+	private static synchronized Checkpoint takeResume(int t) {
+		Checkpoint resume = RESUME != null && RESUME.getTry() == t ? RESUME : null;
+		if (resume != null) RESUME = null;
+		return resume;
+	}
+
+	/**
+	 * Take a snapshot of an attempt at the start of a generation and queue
+	 * 	it to be written. From here on the attempt draws its random numbers
+	 * 	from a new seed, which is kept in the snapshot, so that resuming from
+	 * 	the snapshot makes the same choices as carrying on.
+	 * @param t the try number
+	 * @param gen the generation number
+	 * @param stuckCount the number of generations without improvement
+	 * @param bestFit the best fitness so far
+	 * @param layout the layout of the puzzle
+	 * @param conf the configuration of the population
+	 * @param pop the population
+	 */
+	private static void checkpoint(int t, int gen, int stuckCount, int bestFit,
+			PuzzleLayout layout, Configuration conf, Population pop) {
+		SplittableRandomGenerator rand = (SplittableRandomGenerator) conf.getRandomGenerator();
+		long randomSeed = rand.nextLong();
+		rand.setRandom(new SplittableRandom(randomSeed));
+		CHECKPOINTS.submit(Checkpoint.capture(SEED, t, gen, stuckCount, bestFit,
+				randomSeed, layout, pop));
+	}
+
+	/**
+	 * Breed the next generation of a population, and record its statistics
+	 * 	if metrics are being kept
+	 * @param population the population
+	 * @param arena the arena its chromosomes come from
+	 * @param conf its configuration
+	 * @param gen the number of the generation being bred from
+	 * @param startTime when the population's first generation began, as
+	 * 	given by System.nanoTime()
+	 * @param replaced the number of duplicates replaced before breeding
+	 */
+	static void breed(Genotype population, ChromosomeArena arena,
+			Configuration conf, int gen, long startTime, int replaced) {
+		long genStartTime = System.nanoTime();
+		population.evolve();
+		arena.recycle(population.getPopulation());
+		if (METRICS != null) {
+			long now = System.nanoTime();
+			METRICS.record(conf.getName(), gen, now - startTime, now - genStartTime,
+					(InstrumentedBreeder) conf.getBreeder(), population.getPopulation(),
+					replaced);
+		}
+	}
+
+	/**
+	 * @return the reporter of each attempt's progress; it prints nothing in
+	 * 	batch mode or when --quiet is given
+	 */
+	static ProgressReporter getReporter() {
+		return REPORTER;
+	}
+
+	/**
+	 * @return whether individuals identical to others should be replaced
+	 * 	before every generation
+	 */
+	static boolean isRemovingDuplicates() {
+		return REMOVE_DUPLICATES;
+	}
+
+	/**
+	 * Count the number of blank spaces in a puzzle
+	 * @param puzzle
+	 * @return
+	 */
+	static int countBlanks(int[][] puzzle) {
+		int count = 0;
+		for (int i = 0; i < puzzle.length; ++i) {
+			for (int j = 0; j < puzzle.length; ++j) {
+				if (puzzle[i][j] == SudokuUtils.BLANK) {
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Count the number of empty spaces in a puzzle; i.e., the number of
 	 * 	spaces not pre-filled
@@ -220,44 +755,63 @@ public class SudokuSolver {
 		return count;
 	}
 	
-	private static Population generatePopulation(Configuration conf, int[][] puzzle)
+	static Population generatePopulation(Configuration conf, PuzzleLayout layout)
 			throws InvalidConfigurationException {
+		return generatePopulation(conf, layout, null);
+	}
 
-		Population pop = new Population(conf);
+	/**
+	 * Create a population of random chromosomes
+	 * @param conf the configuration
+	 * @param layout the layout of the puzzle
+	 * @param arena the arena to take the chromosomes from, or null
+	 * @return the population
+	 * @throws InvalidConfigurationException
+	 */
+	static Population generatePopulation(Configuration conf, PuzzleLayout layout,
+			ChromosomeArena arena) throws InvalidConfigurationException {
 
-		ArrayList<IntegerGene>[] genes = new ArrayList[puzzle.length];
-		for (int i = 0; i < puzzle.length; ++i) {
-			boolean[] seen = new boolean[puzzle.length];
-			for (int j = 0; j < puzzle.length; ++j) {
-				int num = puzzle[i][j];
-				if (num != SudokuUtils.BLANK) {
-					seen[num - 1] = true;
-				}
-			}
+		Population pop = new Population(conf);
 
-			genes[i] = new ArrayList<IntegerGene>();
+		for (int i = 0; i < POP_SIZE; ++i) {
+			pop.addChromosome(randomChromosome(conf, layout, arena));
+		}
+		return pop;
+	}
 
-			for (int j = 0; j < puzzle.length; ++j) {
-				if (!seen[j]) {
-					IntegerGene num = new IntegerGene(conf);
-					num.setAllele(new Integer(j + 1));
-					genes[i].add(num);
-				}
-			}
+	/**
+	 * Create a chromosome with every row randomly permuted
+	 * @param conf the configuration
+	 * @param layout the layout of the puzzle
+	 * @param arena the arena to take the chromosome from, or null
+	 * @return the chromosome
+	 * @throws InvalidConfigurationException
+	 */
+	static SudokuChromosome randomChromosome(Configuration conf, PuzzleLayout layout,
+			ChromosomeArena arena) throws InvalidConfigurationException {
+		RandomGenerator rand = conf.getRandomGenerator();
+		int size = layout.getSize();
+		SudokuChromosome chrom = arena != null ? arena.obtain()
+				: new SudokuChromosome(conf, layout, new int[size][], new boolean[size]);
+		for (int j = 0; j < size; ++j) {
+			int[] row = layout.getMissingValues(j);
+			shuffle(row, rand);
+			chrom.setRow(j, row, true);
 		}
+		return chrom;
+	}
 
-		Random rand = new Random();
-		for (int i = 0; i < POP_SIZE; ++i) {
-			CompositeGene[] randGenes = new CompositeGene[puzzle.length];
-			for (int j = 0; j < puzzle.length; ++j) {
-				randGenes[j] = new CompositeGene(conf);
-				Collections.shuffle(genes[j], rand);
-				for (IntegerGene gene: genes[j]) {
-					randGenes[j].addGene(gene);
-				}
-			}
-			pop.addChromosome(new Chromosome(conf, randGenes));
+	/**
+	 * Randomly permute an array
+	 * @param values the array
+	 * @param rand a random number generator
+	 */
+	private static void shuffle(int[] values, RandomGenerator rand) {
+		for (int i = values.length - 1; i > 0; --i) {
+			int j = rand.nextInt(i + 1);
+			int tmp = values[i];
+			values[i] = values[j];
+			values[j] = tmp;
 		}
-		return pop;
 	}
 }
@@ -1,14 +1,10 @@
 package edu.carleton.comp4107.project;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.List;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 
-import org.jgap.Gene;
 import org.jgap.IChromosome;
-import org.jgap.impl.CompositeGene;
 
 public class SudokuUtils {
 	public static final int BLANK = 0;
@@ -21,24 +17,16 @@ public class SudokuUtils {
 	public static  int[][] formatPuzzle(IChromosome solution, int[][] inputPuzzle) {
 		int size = inputPuzzle.length;
 		int[][] puzzle = new int[size][];
+		SudokuChromosome chrom = (SudokuChromosome) solution;
 
 		for (int i = 0; i < size; ++i) {
-
-			CompositeGene rowGene = (CompositeGene) solution.getGene(i);
-			List<Gene> row = rowGene.getGenes();
-
 			puzzle[i] = new int[size];
+			int[] row = chrom.getRow(i);
 			int k = 0;
-			/*
-			for (int j = 0; j < size; ++j) System.out.print(inputPuzzle[i][j]+ ", ");
-			System.out.println("--");
-			for (Gene g: row) System.out.print(g.getAllele()+ ", ");
-			System.out.println("!!");
-			*/
 			for (int j = 0; j < size; ++j) {
 				int input = inputPuzzle[i][j];
 				if (input == BLANK) {
-					puzzle[i][j] = (Integer) row.get(k++).getAllele();
+					puzzle[i][j] = row[k++];
 				} else {
 					puzzle[i][j] = input;
 				}
@@ -49,61 +37,88 @@ public class SudokuUtils {
 	}
 	
 	/**
-	 * Prints the given puzzle to stdout
+	 * Prints the given puzzle to stdout, all at once
 	 * @param puzzle
 	 */
 	public  static void printPuzzle(int[][] puzzle) {
+		StringBuilder sb = new StringBuilder();
+		appendPuzzle(sb, puzzle);
+		System.out.print(sb);
+	}
+
+	/**
+	 * Append the given puzzle as printPuzzle prints it: a line per row, each
+	 * 	cell followed by a tab
+	 * @param sb the builder to append to
+	 * @param puzzle the puzzle
+	 */
+	public static void appendPuzzle(StringBuilder sb, int[][] puzzle) {
+		String newline = System.lineSeparator();
 		for (int i = 0; i < puzzle.length; ++i) {
 			for (int j = 0; j < puzzle.length; ++j) {
-				System.out.print(puzzle[i][j] + "\t");
+				sb.append(puzzle[i][j]).append('\t');
 			}
-			System.out.println();
+			sb.append(newline);
 		}
 	}
 
 	/**
-	 * Read & deserialize test data from file and populate list
-	 * @throws IOException
+	 * Load the single puzzle held by a file, written as a grid or on one
+	 * 	line; see PuzzleReader
+	 * @throws IOException if the file can't be read, or doesn't hold
+	 * 	exactly one well-formed puzzle
 	 */
 	public static int[][] loadPuzzle(String filename) throws IOException {
-		FileReader fr = new FileReader(new File(filename));
-		BufferedReader br = new BufferedReader(fr);
-		String line;
-		int[][] puzzle = null;
-		int size = 0;
-		int lineNum = 0;
-		for (lineNum = 0; (line = br.readLine()) != null; ++lineNum) {
-			if (!line.isEmpty()) {
-				String[] stringRow = line.split(" ");
-				int[] row = new int[stringRow.length];
-				for (int i = 0; i < stringRow.length; ++i) {
-					row[i] = Integer.parseInt(stringRow[i]);
-				}
-				if (puzzle == null) {
-					size = row.length;
-					double n = Math.sqrt(size);
-					if (n != Math.floor(n)) {
-						br.close();
-						throw new IOException(SudokuSolver.DATA_ERR + 
-								SudokuSolver.SIZE_ERR);
-					}
-					puzzle = new int[row.length][];
-				}
-				if (row.length != size || lineNum >= size) {
-					br.close();
-					throw new IOException(SudokuSolver.DATA_ERR + 
-							SudokuSolver.ROW_LEN_ERR);
-				}
-				puzzle[lineNum] = row;
+		PuzzleReader reader = new PuzzleReader(filename);
+		try {
+			int[][] puzzle = reader.read();
+			if (puzzle == null) {
+				throw new IOException(SudokuSolver.DATA_ERR + 
+						SudokuSolver.NUM_ROWS_ERR);
 			}
+			if (reader.hasMore()) {
+				throw new IOException(SudokuSolver.DATA_ERR + 
+						SudokuSolver.ROW_LEN_ERR + (puzzle.length + 1));
+			}
+			return puzzle;
+		} finally {
+			reader.close();
 		}
-		if (lineNum < size) {
-			br.close();
-			throw new IOException(SudokuSolver.DATA_ERR + 
-					SudokuSolver.NUM_ROWS_ERR);
+	}
+
+	/**
+	 * Formats a puzzle on a single line, row by row: as one digit per cell
+	 * 	if every value fits in a digit, otherwise as values separated by
+	 * 	spaces
+	 * @param puzzle
+	 * @return the puzzle as a single line
+	 */
+	public static String toLine(int[][] puzzle) {
+		boolean digits = puzzle.length <= 9;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < puzzle.length; ++i) {
+			for (int j = 0; j < puzzle.length; ++j) {
+				if (!digits && sb.length() > 0) sb.append(' ');
+				sb.append(puzzle[i][j]);
+			}
 		}
-		br.close();
-		return puzzle;
+		return sb.toString();
 	}
 
-}
\ No newline at end of file
+	/**
+	 * @return the total number of bytes the current thread has allocated,
+	 * 	or -1 if the JVM doesn't keep count
+	 */
+	public static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported()
+				|| !counter.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
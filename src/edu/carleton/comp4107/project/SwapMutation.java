@@ -2,26 +2,47 @@ package edu.carleton.comp4107.project;
 
 
 import org.jgap.*;
-import org.jgap.impl.CompositeGene;
 
-import java.util.Collections;
 import java.util.List;
 
 public class SwapMutation implements GeneticOperator {
 	public static double MUTATION_RATE = 0.1;
+	private final double mutationRate;
+
+	/**
+	 * Create a mutation operator using the global MUTATION_RATE
+	 */
+	public SwapMutation() {
+		this(MUTATION_RATE);
+	}
+
+	/**
+	 * @param mutationRate the probability of swapping two cells of each row
+	 */
+	public SwapMutation(double mutationRate) {
+		this.mutationRate = mutationRate;
+	}
+
+	/**
+	 * @return the probability of swapping two cells of each row
+	 */
+	public double getMutationRate() {
+		return mutationRate;
+	}
 	
     @Override
     public void operate(Population population, List candidates) {
         int size = population.size();
+        RandomGenerator rand = population.getConfiguration().getRandomGenerator();
         for(int i = 0; i < size; ++i) {
             boolean mutated = false;
-            IChromosome chromosome = population.getChromosome(i);
-            for (Gene g: chromosome.getGenes()) {
-                CompositeGene gene = (CompositeGene) g;
-                int gSize = gene.size();
-                if (Math.random() < MUTATION_RATE) {
+            SudokuChromosome chromosome = (SudokuChromosome) population.getChromosome(i);
+            PuzzleLayout layout = chromosome.getLayout();
+            for (int row = 0; row < layout.getSize(); ++row) {
+                int gSize = layout.getRowLength(row);
+                if (rand.nextDouble() < mutationRate && gSize > 1) {
                     mutated = true;
-                    Collections.swap(gene.getGenes(), (int) (Math.random() * gSize), (int) (Math.random() * gSize));
+                    chromosome.swap(row, rand.nextInt(gSize), rand.nextInt(gSize));
                 }
             }
             if (mutated) {
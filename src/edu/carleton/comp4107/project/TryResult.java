@@ -0,0 +1,117 @@
+package edu.carleton.comp4107.project;
+
+/**
+ * The outcome of one attempt at solving a puzzle
+ */
+public class TryResult {
+	private final int[][] grid;
+	private final int bestFit;
+	private final boolean solved;
+	private final boolean cancelled;
+	private final int generation;
+	private final long time;
+	private final long bytesPerGeneration;
+	private final long evaluations;
+
+	/**
+	 * @param grid the puzzle filled in by the best solution found
+	 * @param bestFit the fitness of that solution
+	 * @param solved whether the fittest chromosome solves the puzzle
+	 * @param cancelled whether the attempt was stopped because another
+	 * 	attempt solved the puzzle
+	 * @param generation the generation the attempt ended on
+	 * @param time the time the attempt took in nanoseconds
+	 */
+	public TryResult(int[][] grid, int bestFit, boolean solved, boolean cancelled,
+			int generation, long time) {
+		this(grid, bestFit, solved, cancelled, generation, time, -1);
+	}
+
+	/**
+	 * @param grid the puzzle filled in by the best solution found
+	 * @param bestFit the fitness of that solution
+	 * @param solved whether the fittest chromosome solves the puzzle
+	 * @param cancelled whether the attempt was stopped because another
+	 * 	attempt solved the puzzle
+	 * @param generation the generation the attempt ended on
+	 * @param time the time the attempt took in nanoseconds
+	 * @param bytesPerGeneration the mean number of bytes allocated per
+	 * 	generation, or -1 if unknown
+	 */
+	public TryResult(int[][] grid, int bestFit, boolean solved, boolean cancelled,
+			int generation, long time, long bytesPerGeneration) {
+		this(grid, bestFit, solved, cancelled, generation, time, bytesPerGeneration, -1);
+	}
+
+	/**
+	 * @param grid the puzzle filled in by the best solution found
+	 * @param bestFit the fitness of that solution
+	 * @param solved whether the fittest chromosome solves the puzzle
+	 * @param cancelled whether the attempt was stopped because another
+	 * 	attempt solved the puzzle
+	 * @param generation the generation the attempt ended on
+	 * @param time the time the attempt took in nanoseconds
+	 * @param bytesPerGeneration the mean number of bytes allocated per
+	 * 	generation, or -1 if unknown
+	 * @param evaluations the number of candidate solutions scored, or -1 if
+	 * 	unknown
+	 */
+	public TryResult(int[][] grid, int bestFit, boolean solved, boolean cancelled,
+			int generation, long time, long bytesPerGeneration, long evaluations) {
+		this.grid = grid;
+		this.bestFit = bestFit;
+		this.solved = solved;
+		this.cancelled = cancelled;
+		this.generation = generation;
+		this.time = time;
+		this.bytesPerGeneration = bytesPerGeneration;
+		this.evaluations = evaluations;
+	}
+
+	/**
+	 * @return the puzzle filled in by the best solution found
+	 */
+	public int[][] getGrid() {
+		return grid;
+	}
+
+	public int getBestFit() {
+		return bestFit;
+	}
+
+	public boolean isSolved() {
+		return solved;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return the time the attempt took in nanoseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the mean number of bytes allocated per generation by the
+	 * 	thread evolving the population, or -1 if unknown
+	 */
+	public long getBytesPerGeneration() {
+		return bytesPerGeneration;
+	}
+
+	/**
+	 * @return the number of candidate solutions scored: for the GA, every
+	 * 	member of every generation, and for annealing, every move; or -1 if
+	 * 	unknown
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+}